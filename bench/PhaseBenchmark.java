@@ -0,0 +1,284 @@
+import java.io.BufferedReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Benchmarks every phase of parsing separately for the workloads of JUnitPerformanceTest (see Workload):
+ *      - generator: creating the automata of the grammar
+ *      - colorizer: coloring the edges of the automata
+ *      - recognize: traversing the automata and filling the Parse Forest
+ *      - prune: pruning the Parse Forest
+ *      - puretrace: extracting all traces of the Pruned Parse Forest
+ *      - buildAST: converting all traces to ASTs
+ *
+ * Every benchmark is measured in iterations of at least the iteration time, after a number of warmup iterations.
+ * The score of an iteration is the average time of a single operation. Results are written in the JSON format of JMH,
+ * so that they can be compared and visualized with the same tools.
+ * Like the forks of JMH, every benchmark and workload runs in its own JVMs with the JVM options of this JVM,
+ * so that the classes loaded and compiled for one benchmark do not affect the next. With -f 0 they all run in this JVM.
+ *
+ * Usage: java PhaseBenchmark [-p workload,...] [-b benchmark,...] [-f forks] [-wi warmups] [-i iterations] [-r ms] [-rf file]
+ */
+public class PhaseBenchmark {
+
+    static final String[] WORKLOADS = {"longInput-1600", "deepGrammar-1600", "deepNesting-38", "combined-400",
+            "longAmbiguity-16", "broadAmbiguity-5", "generated-100000"};
+    static final String[] BENCHMARKS = {"generator", "colorizer", "recognize", "prune", "puretrace", "buildAST"};
+
+    //Results of the benchmarks are consumed here, so that they can not be eliminated
+    private static volatile int sink;
+
+    /**
+     * A single benchmarked operation. Setup is called before every operation and is not measured.
+     */
+    private interface Operation {
+
+        default void setup() {
+        }
+
+        int run();
+    }
+
+    /**
+     * Prepares all phases of a workload up to the benchmarked phase and returns the operation of that phase
+     * @param benchmark benchmarked phase
+     * @param workload workload
+     * @return operation of the phase
+     */
+    static Operation operation(String benchmark, Workload workload) {
+        String grammar = workload.getGrammar();
+        String input = workload.getInput();
+        if (benchmark.equals("generator")) {
+            return () -> new Generator(grammar).getT().size();
+        }
+        Generator g = new Generator(grammar);
+        if (benchmark.equals("colorizer")) {
+            return () -> new Colorizer(g).getColoredEdges().size();
+        }
+        Colorizer c = new Colorizer(g);
+        Automata automata = new Automata(g.getA(), g.getT(), g.getS0(), g.getOpentoclose(), c.getColors(), c.getColoredEdges());
+        PrunerGenerator pruner = automata.getPruner();
+        switch (benchmark) {
+            case "recognize":
+                return () -> {
+                    ParseForest forest = new ParseForest(pruner, input.length());
+                    automata.recognize(input, forest);
+                    return forest.size();
+                };
+            case "prune":
+                return new Operation() {
+                    ParseForest forest;
+
+                    public void setup() {
+                        forest = new ParseForest(pruner, input.length());
+                        automata.recognize(input, forest);
+                    }
+
+                    public int run() {
+                        pruner.prune(forest);
+                        return forest.size();
+                    }
+                };
+            case "puretrace":
+                List<Set<ParseTreeEdge>> l = automata.parseForest(input).toList();
+                return () -> {
+                    int res = 0;
+                    for (ParseTreeEdge start : l.get(0)) {
+                        res += automata.puretrace(start, l).size();
+                    }
+                    return res;
+                };
+            case "buildAST":
+                List<Set<ParseTreeEdge>> forest = automata.parseForest(input).toList();
+                List<List<ParseTreeEdge>> traces = new ArrayList<>();
+                for (ParseTreeEdge start : forest.get(0)) {
+                    traces.addAll(automata.puretrace(start, forest));
+                }
+                return () -> {
+                    int res = 0;
+                    for (List<ParseTreeEdge> trace : traces) {
+                        res += automata.buildAST(trace).getChildren().size();
+                    }
+                    return res;
+                };
+            default:
+                throw new IllegalArgumentException("Unknown benchmark " + benchmark);
+        }
+    }
+
+    /**
+     * Runs an operation for at least the given time
+     * @return average time of a single operation in ms
+     */
+    static double iteration(Operation operation, long time) {
+        long measured = 0;
+        int count = 0;
+        long end = System.nanoTime() + time * 1_000_000;
+        do {
+            operation.setup();
+            long start = System.nanoTime();
+            sink += operation.run();
+            measured += System.nanoTime() - start;
+            count++;
+        } while (System.nanoTime() < end);
+        return measured / 1e6 / count;
+    }
+
+    /**
+     * Measures a benchmark of a workload in this JVM
+     * @return scores of the iterations
+     */
+    static double[] measure(String benchmark, String workload, int warmups, int iterations, long time) {
+        Operation operation = operation(benchmark, Workload.of(workload));
+        for (int i = 0; i < warmups; i++) {
+            iteration(operation, time);
+        }
+        double[] scores = new double[iterations];
+        for (int i = 0; i < iterations; i++) {
+            scores[i] = iteration(operation, time);
+        }
+        return scores;
+    }
+
+    /**
+     * Measures a benchmark of a workload in a new JVM, which runs measure and writes the scores as its only output line
+     * @return scores of the iterations
+     */
+    static double[] fork(String benchmark, String workload, int warmups, int iterations, long time) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), PhaseBenchmark.class.getName(), "-fork",
+                benchmark, workload, String.valueOf(warmups), String.valueOf(iterations), String.valueOf(time)));
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        String line;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            line = in.readLine();
+        }
+        try {
+            if (process.waitFor() != 0 || line == null) {
+                throw new IOException("Fork of " + benchmark + " " + workload + " failed");
+            }
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the fork of " + benchmark + " " + workload, e);
+        }
+        return Arrays.stream(line.split(",")).mapToDouble(Double::parseDouble).toArray();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 6 && args[0].equals("-fork")) {
+            double[] scores = measure(args[1], args[2], Integer.parseInt(args[3]), Integer.parseInt(args[4]), Long.parseLong(args[5]));
+            StringJoiner line = new StringJoiner(",");
+            for (double score : scores) {
+                line.add(String.valueOf(score));
+            }
+            System.out.println(line);
+            return;
+        }
+        String[] workloads = WORKLOADS;
+        String[] benchmarks = BENCHMARKS;
+        int forks = 1;
+        int warmups = 3;
+        int iterations = 5;
+        long time = 1000;
+        String file = "jmh-result.json";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-p": workloads = args[i + 1].split(","); break;
+                case "-b": benchmarks = args[i + 1].split(","); break;
+                case "-f": forks = Integer.parseInt(args[i + 1]); break;
+                case "-wi": warmups = Integer.parseInt(args[i + 1]); break;
+                case "-i": iterations = Integer.parseInt(args[i + 1]); break;
+                case "-r": time = Long.parseLong(args[i + 1]); break;
+                case "-rf": file = args[i + 1]; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        List<String> results = new ArrayList<>();
+        for (String benchmark : benchmarks) {
+            for (String name : workloads) {
+                //Scores of every fork, or of this JVM without forks
+                double[][] scores = new double[Math.max(1, forks)][];
+                for (int f = 0; f < scores.length; f++) {
+                    scores[f] = forks == 0 ? measure(benchmark, name, warmups, iterations, time) : fork(benchmark, name, warmups, iterations, time);
+                }
+                double[] all = Arrays.stream(scores).flatMapToDouble(Arrays::stream).toArray();
+                System.out.printf("%-10s %-20s %12.3f +- %.3f ms/op%n", benchmark, name, mean(all), error(all));
+                results.add(toJSON(benchmark, name, forks, warmups, time, scores));
+            }
+        }
+        try (Writer out = new FileWriter(file)) {
+            out.write("[\n" + String.join(",\n", results) + "\n]\n");
+        }
+    }
+
+    static double mean(double[] scores) {
+        double sum = 0;
+        for (double score : scores) {
+            sum += score;
+        }
+        return sum / scores.length;
+    }
+
+    /**
+     * @return half-width of the 99.9% confidence interval of the mean, assuming normally distributed scores
+     */
+    static double error(double[] scores) {
+        if (scores.length < 2) return Double.NaN;
+        double mean = mean(scores);
+        double variance = 0;
+        for (double score : scores) {
+            variance += (score - mean) * (score - mean);
+        }
+        variance /= scores.length - 1;
+        return 3.291 * Math.sqrt(variance / scores.length);
+    }
+
+    /**
+     * @param scores scores of the iterations of every fork
+     * @return result of a benchmark as an element of the JMH JSON result array
+     */
+    static String toJSON(String benchmark, String workload, int forks, int warmups, long time, double[][] scores) {
+        StringJoiner raw = new StringJoiner(",\n");
+        for (double[] fork : scores) {
+            StringJoiner line = new StringJoiner(", ", "        [", "]");
+            for (double score : fork) {
+                line.add(String.valueOf(score));
+            }
+            raw.add(line.toString());
+        }
+        double[] all = Arrays.stream(scores).flatMapToDouble(Arrays::stream).toArray();
+        double error = error(all);
+        return "  {\n" +
+                "    \"benchmark\" : \"PhaseBenchmark." + benchmark + "\",\n" +
+                "    \"mode\" : \"avgt\",\n" +
+                "    \"threads\" : 1,\n" +
+                "    \"forks\" : " + forks + ",\n" +
+                "    \"warmupIterations\" : " + warmups + ",\n" +
+                "    \"warmupTime\" : \"" + time + " ms\",\n" +
+                "    \"measurementIterations\" : " + scores[0].length + ",\n" +
+                "    \"measurementTime\" : \"" + time + " ms\",\n" +
+                "    \"params\" : {\n" +
+                "      \"workload\" : \"" + workload + "\"\n" +
+                "    },\n" +
+                "    \"primaryMetric\" : {\n" +
+                "      \"score\" : " + mean(all) + ",\n" +
+                "      \"scoreError\" : " + (Double.isNaN(error) ? "\"NaN\"" : error) + ",\n" +
+                "      \"scoreUnit\" : \"ms/op\",\n" +
+                "      \"rawData\" : [\n" +
+                raw + "\n" +
+                "      ]\n" +
+                "    },\n" +
+                "    \"secondaryMetrics\" : {\n" +
+                "    }\n" +
+                "  }";
+    }
+}
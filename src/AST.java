@@ -1,48 +1,186 @@
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.*;
 
-public class AST {
+public class AST implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final String value;
     private final List<AST> children;
     private boolean isReturn = false;
+    //Set when the node is the canonical node of an ASTInterner, canonical nodes can not be changed
+    private transient ASTInterner interner = null;
+    private int hash;
 
     public AST(String value) {
         this.value = value;
         this.children = new ArrayList<>();
     }
 
+    /**
+     * Create a canonical node, see ASTInterner
+     */
+    AST(String value, List<AST> children, ASTInterner interner) {
+        this.value = value;
+        this.children = Collections.unmodifiableList(children);
+        this.hash = computeHash(this);
+        this.interner = interner;
+    }
+
     public void addChild(AST ast) {
+        if (interner != null) {
+            throw new UnsupportedOperationException("Interned AST can not be changed");
+        }
         children.add(ast);
     }
 
-    public int depth() {
-        if (children.isEmpty()) {
-            return 0;
-        } else {
-            int max = 0;
-            for (AST child : children) {
-                max = Math.max(max, child.depth());
+    /**
+     * Visitor for a depth-first traversal, see accept
+     */
+    public interface Visitor {
+
+        /**
+         * Called before the children of a node are visited
+         * @param node node
+         */
+        void enter(AST node);
+
+        /**
+         * Called after the children of a node are visited
+         * @param node node
+         */
+        default void exit(AST node) {
+        }
+    }
+
+    /**
+     * Visits all nodes depth-first with an explicit stack, so that deep trees do not overflow the Java stack.
+     * @param visitor visitor
+     */
+    public void accept(Visitor visitor) {
+        //array-backed stack of the nodes being visited and the index of their next child
+        AST[] nodes = new AST[16];
+        int[] next = new int[16];
+        int top = 0;
+        nodes[top] = this;
+        next[top++] = 0;
+        visitor.enter(this);
+        while (top > 0) {
+            AST node = nodes[top - 1];
+            if (next[top - 1] == node.children.size()) {
+                visitor.exit(node);
+                nodes[--top] = null;
+                continue;
             }
-            return max;
+            AST child = node.children.get(next[top - 1]++);
+            if (top == nodes.length) {
+                nodes = Arrays.copyOf(nodes, top * 2);
+                next = Arrays.copyOf(next, top * 2);
+            }
+            nodes[top] = child;
+            next[top++] = 0;
+            visitor.enter(child);
         }
     }
 
+    /**
+     * @return Iterator over all nodes in pre-order
+     */
+    public Iterator<AST> preOrder() {
+        Stack<AST> todo = new Stack<>();
+        todo.push(this);
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !todo.isEmpty();
+            }
+
+            @Override
+            public AST next() {
+                if (todo.isEmpty()) throw new NoSuchElementException();
+                AST node = todo.pop();
+                for (int i = node.children.size() - 1; i >= 0; i--) {
+                    todo.push(node.children.get(i));
+                }
+                return node;
+            }
+        };
+    }
+
+    /**
+     * @return Iterator over all nodes in post-order
+     */
+    public Iterator<AST> postOrder() {
+        Stack<Pair<AST, Integer>> todo = new Stack<>();
+        todo.push(new Pair<>(this, 0));
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return !todo.isEmpty();
+            }
+
+            @Override
+            public AST next() {
+                if (todo.isEmpty()) throw new NoSuchElementException();
+                while (true) {
+                    AST node = todo.peek().getLeft();
+                    int i = todo.pop().getRight();
+                    if (i == node.children.size()) {
+                        return node;
+                    }
+                    todo.push(new Pair<>(node, i + 1));
+                    todo.push(new Pair<>(node.children.get(i), 0));
+                }
+            }
+        };
+    }
+
+    /**
+     * @return amount of levels below this node, 0 for a leaf
+     */
+    public int depth() {
+        int[] res = {0, 0};
+        accept(new Visitor() {
+            public void enter(AST node) {
+                res[1] = Math.max(res[1], res[0]++);
+            }
+
+            public void exit(AST node) {
+                res[0]--;
+            }
+        });
+        return res[1];
+    }
+
     /**
      * Returns all terminals in correct order. Can be used to check if it corresponds to the input String
-     * @return
+     * @return terminals of the AST
      */
     public String walkTerminals() {
-        if (children.isEmpty()) {
-            return value;
-        }
         StringBuilder res = new StringBuilder();
-        for (AST child : children) {
-            res.append(child.walkTerminals());
+        try {
+            walkTerminals(res);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         return res.toString();
     }
 
+    /**
+     * Writes all terminals in correct order, without building the whole String
+     * @param out destination of the terminals
+     * @throws IOException if writing to out fails
+     */
+    public void walkTerminals(Appendable out) throws IOException {
+        Iterator<AST> it = preOrder();
+        while (it.hasNext()) {
+            AST node = it.next();
+            if (node.children.isEmpty()) out.append(node.value);
+        }
+    }
+
     public String getValue() {
         return value;
     }
@@ -51,16 +189,86 @@ public class AST {
         return children;
     }
 
+    /**
+     * @return if this is the canonical node of an ASTInterner
+     */
+    public boolean isInterned() {
+        return interner != null;
+    }
+
+    /**
+     * Two ASTs are equal if they have the same value and equal children.
+     * Canonical nodes of the same ASTInterner are only equal if they are the same node, so comparing them is O(1).
+     */
     @Override
-    public String toString() {
-        if (children.isEmpty()) {
-            return value;
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AST)) return false;
+        Stack<Pair<AST, AST>> todo = new Stack<>();
+        todo.push(new Pair<>(this, (AST) o));
+        while (!todo.isEmpty()) {
+            AST a = todo.peek().getLeft();
+            AST b = todo.pop().getRight();
+            if (a == b) continue;
+            if (a.interner != null && a.interner == b.interner) return false;
+            if (a.interner != null && b.interner != null && a.hash != b.hash) return false;
+            if (!a.value.equals(b.value) || a.children.size() != b.children.size()) return false;
+            for (int i = 0; i < a.children.size(); i++) {
+                todo.push(new Pair<>(a.children.get(i), b.children.get(i)));
+            }
         }
-        StringBuilder res = new StringBuilder();
-        res.append(value);
-        for (AST ast : children) {
-            res.append(String.format(" [%s]", ast.toString()));
+        return true;
+    }
+
+    /**
+     * Cached for canonical nodes, otherwise computed iteratively in post-order.
+     */
+    @Override
+    public int hashCode() {
+        return (interner != null) ? hash : computeHash(this);
+    }
+
+    private static int computeHash(AST root) {
+        Map<AST, Integer> hashes = new IdentityHashMap<>();
+        Stack<AST> todo = new Stack<>();
+        todo.push(root);
+        while (!todo.isEmpty()) {
+            AST node = todo.peek();
+            boolean ready = true;
+            for (AST child : node.children) {
+                if (child.interner == null && !hashes.containsKey(child)) {
+                    todo.push(child);
+                    ready = false;
+                }
+            }
+            if (!ready) continue;
+            todo.pop();
+            int h = node.value.hashCode();
+            for (AST child : node.children) {
+                h = 31 * h + ((child.interner != null) ? child.hash : hashes.get(child));
+            }
+            hashes.put(node, h);
         }
+        return hashes.get(root);
+    }
+
+    /**
+     * Builds the String iteratively: a node is written as its value followed by all children between brackets.
+     */
+    @Override
+    public String toString() {
+        StringBuilder res = new StringBuilder();
+        int[] level = {0};
+        accept(new Visitor() {
+            public void enter(AST node) {
+                if (level[0]++ > 0) res.append(" [");
+                res.append(node.value);
+            }
+
+            public void exit(AST node) {
+                if (--level[0] > 0) res.append("]");
+            }
+        });
         return res.toString();
     }
 }
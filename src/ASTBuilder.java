@@ -0,0 +1,55 @@
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * Builds an AST from a trace, one ParseTreeEdge at a time.
+ * Every edge adds a node for its origin below the node of the previous edge. A call pushes its node,
+ * so that the matching return continues below the node of the call.
+ */
+class ASTBuilder {
+
+    private final Map<String, String> opentoclose;
+    private final Stack<Pair<NonTerminal, NonTerminal>> s = new Stack<>();
+    private final Stack<AST> sreturn = new Stack<>();
+    private AST res = null;
+    private AST currentast = null;
+
+    ASTBuilder(Map<String, String> opentoclose) {
+        this.opentoclose = opentoclose;
+    }
+
+    /**
+     * Adds the next edge of the trace
+     * @param edge next ParseTreeEdge
+     */
+    void add(ParseTreeEdge edge) {
+        if (opentoclose.containsValue(edge.getC()) && !s.isEmpty() && s.peek().equals(edge.getO())) {
+            s.pop();
+            currentast = sreturn.pop();
+            if (!edge.isColored()) currentast.addChild(new AST(edge.getC()));
+            return;
+        }
+
+        AST ast = new AST(edge.getO().toString());
+        if (!edge.isColored()) ast.addChild(new AST(edge.getC()));
+
+        if (opentoclose.containsKey(edge.getC())) {
+            s.push(new Pair<>((NonTerminal) edge.getO(), edge.getD()));
+            sreturn.push(ast);
+        }
+
+        if (res == null) {
+            res = currentast = ast;
+        } else {
+            currentast.addChild(ast);
+            currentast = ast;
+        }
+    }
+
+    /**
+     * @return AST of all added edges
+     */
+    AST getResult() {
+        return res;
+    }
+}
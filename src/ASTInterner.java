@@ -0,0 +1,64 @@
+import java.util.*;
+
+/**
+ * Hash-consing table for ASTs.
+ * Every distinct (value, children) combination is represented by a single canonical node with a cached hash,
+ * so that equal subtrees of different ASTs are shared and canonical nodes can be compared by identity.
+ * Canonical nodes can not be changed.
+ */
+public class ASTInterner {
+
+    private final Map<AST, AST> table = new HashMap<>();
+
+    /**
+     * Returns the canonical AST equal to the given AST. Nodes are interned iteratively in post-order,
+     * so that the children of a node are canonical before the node is looked up.
+     * @param ast AST
+     * @return canonical AST
+     */
+    public AST intern(AST ast) {
+        if (ast.isInterned() && table.get(ast) == ast) {
+            return ast;
+        }
+        Map<AST, AST> canonical = new IdentityHashMap<>();
+        Stack<AST> todo = new Stack<>();
+        todo.push(ast);
+        while (!todo.isEmpty()) {
+            AST node = todo.peek();
+            if (canonical.containsKey(node)) {
+                todo.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (AST child : node.getChildren()) {
+                if (!canonical.containsKey(child)) {
+                    todo.push(child);
+                    ready = false;
+                }
+            }
+            if (!ready) continue;
+            todo.pop();
+
+            List<AST> children = new ArrayList<>(node.getChildren().size());
+            for (AST child : node.getChildren()) {
+                children.add(canonical.get(child));
+            }
+            //The candidate is only marked as canonical when it is added, as canonical nodes of one table are compared by identity
+            AST candidate = new AST(node.getValue(), children, null);
+            AST res = table.get(candidate);
+            if (res == null) {
+                res = new AST(node.getValue(), children, this);
+                table.put(res, res);
+            }
+            canonical.put(node, res);
+        }
+        return canonical.get(ast);
+    }
+
+    /**
+     * @return amount of distinct nodes
+     */
+    public int size() {
+        return table.size();
+    }
+}
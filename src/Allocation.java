@@ -0,0 +1,26 @@
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the bytes which the current thread allocates, for the tests which check allocation.
+ */
+class Allocation {
+
+    private static final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private Allocation() {
+    }
+
+    /**
+     * @return if the JVM measures the bytes allocated by a thread
+     */
+    static boolean isSupported() {
+        return bean.isThreadAllocatedMemorySupported();
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far
+     */
+    static long allocated() {
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
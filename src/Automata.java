@@ -1,13 +1,30 @@
+import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class Automata {
 
-    private final Map<State, Set<Transition>> map;
-    private final Map<State, Set<ColoredEdge>> coloredmap;
+    //Transitions and Colored Edges of every State, in arrays so that a step does not allocate an iterator
+    private final Map<State, Transition[]> map;
+    private final Map<State, ColoredEdge[]> coloredmap;
     private final State start;
-    private Stack<Pair<State, String>> stack;
     private final Map<String, String> opentoclose;
     private final Map<String, Integer> colors;
+    private final PrunerGenerator pruner;
+    private final Map<Transition, long[][]> edgebits;
+    private final boolean deterministic;
+    private MetricsListener metrics = null;
+    //Compiled transition tables, only built when inputs are recognized in lockstep or over a trie
+    private volatile TableRecognizer tables = null;
+    //Counters of the running parse of every thread, only set if a MetricsListener is set
+    private final ThreadLocal<ParseStatistics> running = new ThreadLocal<>();
 
     /**
      * Create an Automata based on a Set of States, a Set of Transitions and a Start State
@@ -19,21 +36,47 @@ public class Automata {
         this.start = start;
         this.opentoclose = opentoclose;
         this.colors = colors;
-        map = new TreeMap<>();
+        Map<State, Set<Transition>> transitions = new TreeMap<>();
         for (Transition t : T) {
-            if (!map.containsKey(t.getOrigin())) {
-                map.put(t.getOrigin(), new HashSet<>());
+            if (!transitions.containsKey(t.getOrigin())) {
+                transitions.put(t.getOrigin(), new HashSet<>());
             }
-            map.get(t.getOrigin()).add(t);
+            transitions.get(t.getOrigin()).add(t);
+        }
+        map = new TreeMap<>();
+        transitions.forEach((state, s) -> map.put(state, s.toArray(new Transition[0])));
+        Map<State, Set<ColoredEdge>> colored = new TreeMap<>();
+        for (ColoredEdge t : coloredT) {
+            if (!colored.containsKey(t.getOrigin())) {
+                colored.put(t.getOrigin(), new HashSet<>());
+            }
+            colored.get(t.getOrigin()).add(t);
         }
         coloredmap = new TreeMap<>();
+        colored.forEach((state, s) -> coloredmap.put(state, s.toArray(new ColoredEdge[0])));
+        pruner = new PrunerGenerator(T, coloredT, opentoclose);
+
+        //Bitsets of the ParseTreeEdges of every transition, so that recognizing only copies them into the Parse Forest
+        edgebits = new HashMap<>();
+        for (Transition t : T) {
+            edgebits.put(t, new long[][] {pruner.toBits(t.getParseTreeEdges())});
+        }
         for (ColoredEdge t : coloredT) {
-            if (!coloredmap.containsKey(t.getOrigin())) {
-                coloredmap.put(t.getOrigin(), new HashSet<>());
+            long[][] m = new long[t.getParseTreeEdgesList().size()][];
+            for (int i = 0; i < m.length; i++) {
+                m[i] = pruner.toBits(t.getParseTreeEdgesList().get(i));
             }
-            coloredmap.get(t.getOrigin()).add(t);
+            edgebits.put(t, m);
         }
 
+        //If every transition carries exactly one ParseTreeEdge, recognizing an input determines its only trace
+        boolean single = true;
+        for (long[][] m : edgebits.values()) {
+            for (long[] bits : m) {
+                single &= count(bits) == 1;
+            }
+        }
+        deterministic = single;
     }
 
     /**
@@ -42,204 +85,902 @@ public class Automata {
      * @return null if not recognized, otherwise a set of possible ASTs
      */
     public Set<AST> parse(String input) {
-        stack = new Stack<>();
-        List<Set<ParseTreeEdge>> l = new ArrayList<>();
-        if (!recognize(start, input, l)) {
+        return measure("parse", input, () -> parse(input, (ParseOptions.Budget) null));
+    }
+
+    /**
+     * Same as parse, but stops when the parse exceeds the budget of the options. The budget is checked while recognizing,
+     * pruning, extracting the traces and building the ASTs.
+     * @param input String input
+     * @param options budget of the parse
+     * @return null if not recognized, otherwise a set of possible ASTs
+     * @throws BudgetExceededException if the budget is exceeded, with the ASTs built until then as partial result
+     */
+    public Set<AST> parse(String input, ParseOptions options) {
+        return measure("parse(options)", input, () -> parse(input, options.start()));
+    }
+
+    /**
+     * The phases are measured as the calls of the corresponding parse methods, with or without options
+     */
+    private Set<AST> parse(String input, ParseOptions.Budget budget) {
+        boolean options = budget != null;
+        if (deterministic) {
+            AST ast = measure(options ? "parseDeterministic(options)" : "parseDeterministic", input, () -> parseDeterministic(input, budget));
+            if (ast == null) {
+                //Only the empty input is recognized without an AST
+                return input.isEmpty() && start.isFinal() ? new HashSet<>() : null;
+            }
+            return new HashSet<>(Collections.singletonList(ast));
+        }
+        ParseForest forest = measure(options ? "parseForest(options)" : "parseForest", input, () -> parseForest(input, budget));
+        if (forest == null) {
             return null;
         }
-        List<Set<ParseTreeEdge>> prunedParseForest = prune(l);
         Set<AST> res = new HashSet<>();
-        if (input.equals("") || prunedParseForest.isEmpty()) {
+        if (input.equals("") || forest.size() == 0) {
             return res;
         }
-        for (ParseTreeEdge start : prunedParseForest.get(0)) {
-            for (List<ParseTreeEdge> trace : puretrace(start, l)) {
-                res.add(buildAST(trace));
+        long time = System.nanoTime();
+        long traces = 0;
+        //Interning removes duplicate ASTs and shares their common subtrees
+        ASTInterner interner = new ASTInterner();
+        List<Set<ParseTreeEdge>> l = forest.toList();
+        for (ParseTreeEdge start : l.get(0)) {
+            for (List<ParseTreeEdge> trace : puretrace(start, l, budget)) {
+                AST ast = buildAST(trace, budget);
+                if (ast == null) break;
+                res.add(interner.intern(ast));
+                traces++;
             }
         }
+        ParseStatistics statistics = statistics();
+        if (statistics != null) statistics.extracted(traces, System.nanoTime() - time);
+        if (budget != null && budget.getExceeded() != null) {
+            throw new BudgetExceededException(budget.getExceeded(), res);
+        }
         return res;
     }
 
     /**
-     * Build an AST for a given trace
-     * @param trace trace to be converted to AST
-     * @return AST corresponding to the trace
+     * Same as parse, but the traces are extracted and converted to ASTs in parallel in a ForkJoinPool.
+     * @param input String input
+     * @param pool pool in which the derivations are explored, for example ForkJoinPool.commonPool()
+     * @return null if not recognized, otherwise a set of possible ASTs
      */
-    public AST buildAST(List<ParseTreeEdge> trace) {
-        Stack<Pair<NonTerminal, NonTerminal>> s = new Stack();
-        Stack<AST> sreturn = new Stack();
+    public Set<AST> parse(String input, ForkJoinPool pool) {
+        return measure("parse(pool)", input, () -> {
+            if (deterministic) {
+                return parse(input);
+            }
+            ParseForest forest = parseForest(input);
+            if (forest == null) {
+                return null;
+            }
+            Set<AST> res = new HashSet<>();
+            if (input.equals("") || forest.size() == 0) {
+                return res;
+            }
+            long time = System.nanoTime();
+            List<Set<ParseTreeEdge>> l = forest.toList();
+            List<List<ParseTreeEdge>> traces = new ArrayList<>();
+            for (ParseTreeEdge start : l.get(0)) {
+                traces.addAll(puretrace(start, l, pool));
+            }
+            List<AST> asts = pool.invoke(ForkJoinTask.adapt(() -> traces.parallelStream().map(this::buildAST).collect(Collectors.toList())));
+            //Interning removes duplicate ASTs and shares their common subtrees
+            ASTInterner interner = new ASTInterner();
+            for (AST ast : asts) {
+                res.add(interner.intern(ast));
+            }
+            ParseStatistics statistics = statistics();
+            if (statistics != null) statistics.extracted(traces.size(), System.nanoTime() - time);
+            return res;
+        });
+    }
 
-        AST res = null;
-        AST currentast = null;
-        for (int i = 0; i < trace.size(); i++) {
-            ParseTreeEdge edge = trace.get(i);
+    /**
+     * Parses every input of a batch in parallel in the common ForkJoinPool, see parseAll(List, ParseOptions, Executor, Consumer)
+     * @param inputs inputs of the batch
+     * @param options budget of every input, null if unlimited
+     * @return results in the order of the inputs
+     */
+    public List<BatchResult<Set<AST>>> parseAll(List<? extends CharSequence> inputs, ParseOptions options) {
+        return parseAll(inputs, options, ForkJoinPool.commonPool(), null);
+    }
 
-            if (opentoclose.containsValue(edge.getC()) && !s.isEmpty() && s.peek().equals(edge.getO())) {
-                s.pop();
-                currentast = sreturn.pop();
-                if (!edge.isColored()) currentast.addChild(new AST(edge.getC()));
-                continue;
-            }
+    /**
+     * Parses every input of a batch in parallel on an executor. An Automata can be shared by any amount of threads,
+     * and an input which fails, e.g. by exceeding the options, does not affect the other inputs.
+     * @param inputs inputs of the batch
+     * @param options budget of every input, null if unlimited
+     * @param executor executor on which the inputs are parsed, e.g. a fixed thread pool with a thread per core
+     * @param listener receives the result of every input as soon as it is done, concurrently from the threads of the executor. Can be null.
+     * @return results in the order of the inputs, see parse(String) and parse(String, ParseOptions)
+     */
+    public List<BatchResult<Set<AST>>> parseAll(List<? extends CharSequence> inputs, ParseOptions options, Executor executor,
+                                                Consumer<BatchResult<Set<AST>>> listener) {
+        return BatchParser.run(inputs, input -> (options == null) ? parse(input) : parse(input, options), executor, parallelism(executor), listener);
+    }
+
+    /**
+     * Recognizes every input of a batch in parallel in the common ForkJoinPool
+     * @param inputs inputs of the batch
+     * @return results in the order of the inputs
+     */
+    public List<BatchResult<Boolean>> recognizeAll(List<? extends CharSequence> inputs) {
+        return recognizeAll(inputs, ForkJoinPool.commonPool(), null);
+    }
 
-            AST ast = new AST(edge.getO().toString());
-            if (!edge.isColored()) ast.addChild(new AST(edge.getC()));
+    /**
+     * Recognizes every input of a batch in parallel on an executor, see parseAll
+     * @param inputs inputs of the batch
+     * @param executor executor on which the inputs are recognized
+     * @param listener receives the result of every input as soon as it is done, concurrently from the threads of the executor. Can be null.
+     * @return results in the order of the inputs
+     */
+    public List<BatchResult<Boolean>> recognizeAll(List<? extends CharSequence> inputs, Executor executor, Consumer<BatchResult<Boolean>> listener) {
+        return BatchParser.run(inputs, input -> recognize(input), executor, parallelism(executor), listener);
+    }
 
-            if (opentoclose.containsKey(edge.getC())) {
-                s.push(new Pair<>((NonTerminal) edge.getO(), edge.getD()));
-                sreturn.push(ast);
-            }
+    /**
+     * Recognizes many short inputs in lockstep on the calling thread, see recognizeLockstep(List, int)
+     * @param inputs inputs
+     * @return bitset in which bit i is set if input i is recognized
+     */
+    public BitSet recognizeLockstep(List<? extends CharSequence> inputs) {
+        return recognizeLockstep(inputs, TableRecognizer.LANES);
+    }
 
-            if (res == null) {
-                res = currentast = ast;
-            } else {
-                currentast.addChild(ast);
-                currentast = ast;
-            }
+    /**
+     * Recognizes many short inputs in lockstep on the calling thread, with the same results as recognize.
+     * Groups of inputs advance one symbol of every input per round through transition tables which are compiled on the first call,
+     * so that the per-call overhead of recognize and the latency of its map lookups are shared by the whole group.
+     * No metrics or events are reported for the inputs.
+     * @param inputs inputs, preferably with fast random access
+     * @param lanes amount of inputs which are recognized together
+     * @return bitset in which bit i is set if input i is recognized
+     */
+    public BitSet recognizeLockstep(List<? extends CharSequence> inputs, int lanes) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("At least one lane is needed");
+        }
+        return tables().recognize(inputs, lanes);
+    }
+
+    /**
+     * Recognizes a list of inputs which share prefixes, with the same results as recognize.
+     * The inputs are stored in a trie, and every distinct prefix is recognized once on the transition tables of recognizeLockstep,
+     * so the cost grows with the amount of distinct prefixes instead of the total length of the inputs. No metrics or events are reported.
+     * @param inputs inputs
+     * @return bitset in which bit i is set if input i is recognized
+     */
+    public BitSet recognizeTrie(List<? extends CharSequence> inputs) {
+        return tables().recognizeTrie(inputs);
+    }
+
+    /**
+     * @return the transition tables, which are compiled on the first call
+     */
+    private TableRecognizer tables() {
+        TableRecognizer res = tables;
+        if (res == null) {
+            res = new TableRecognizer(map, coloredmap, start, colors);
+            tables = res;
         }
         return res;
     }
 
     /**
-     * Starting function of puretrace. Extracts a trace based on a given starting point PTE.
-     * @param start starting PTE
-     * @param l Pruned Parse Forest
-     * @return all valid traces from the given starting point
+     * @return amount of threads of a ForkJoinPool, otherwise the amount of processors
      */
-    public Set<List<ParseTreeEdge>> puretrace(ParseTreeEdge start, List<Set<ParseTreeEdge>> l) {
-        Stack<Pair<NonTerminal, NonTerminal>> s = new Stack();
-        List<Set<ParseTreeEdge>> remove = new ArrayList<>();
-        return puretrace(start, l, s, 1);
+    private static int parallelism(Executor executor) {
+        return (executor instanceof ForkJoinPool) ? ((ForkJoinPool) executor).getParallelism() : Runtime.getRuntime().availableProcessors();
     }
 
     /**
-     * Recursive definition of puretrace. Extracts a trace by following valid PTE transitions.
-     * @param start current PTE
-     * @param l Pruned Parse Forest
-     * @param s Stack to handle nesting
-     * @param i next position in the Parse Forest
-     * @return remaining trace sequences
+     * Parse an input in accordance with the grammar. The ASTs are only built when they are requested from the Iterator,
+     * so callers who only need the first ASTs do not pay for all derivations.
+     * @param input String input
+     * @return null if not recognized, otherwise an Iterator over all possible ASTs
      */
-    private Set<List<ParseTreeEdge>> puretrace(ParseTreeEdge start, List<Set<ParseTreeEdge>> l, Stack<Pair<NonTerminal, NonTerminal>> s, int i) {
-        Set<List<ParseTreeEdge>> res = new HashSet<>();
-        if (i == l.size()) {
-            ArrayList<ParseTreeEdge> list = new ArrayList<>();
-            list.add(start);
-            res.add(list);
-            return res;
+    public Iterator<AST> parseLazily(String input) {
+        ParseForest forest = parseForest(input);
+        if (forest == null) {
+            return null;
         }
-        if (opentoclose.containsKey(start.getC())) {
-            s.push(new Pair<>((NonTerminal) start.getO(), start.getD()));
+        return new ParseTreeIterator(buildSPPF(forest));
+    }
+
+    /**
+     * Same as parseLazily, but returns a sequential Stream.
+     * @param input String input
+     * @return null if not recognized, otherwise a Stream of all possible ASTs
+     */
+    public Stream<AST> parseStream(String input) {
+        Iterator<AST> it = parseLazily(input);
+        if (it == null) {
+            return null;
         }
-        for (ParseTreeEdge edge : l.get(i)) {
-            if (start.getD().equals(edge.getO())) {
-                for (List<ParseTreeEdge> child : puretrace(edge, l, s, i+1)) {
-                    child.add(0, start);
-                    res.add(child);
-                }
-            } else if (start.getD().nullable() && edge.getO() instanceof Pair
-                    && !s.isEmpty() && s.peek().equals(edge.getO())
-            ) {
-                s.pop();
-                for (List<ParseTreeEdge> child : puretrace(edge, l, s, i+1)) {
-                    child.add(0, start);
-                    res.add(child);
-                }
-            }
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Parse an input in accordance with the grammar and return the k highest-scoring ASTs in order.
+     * The score of an AST is the product of the weights of its rules. Only the derivations needed for the first k ASTs are explored.
+     * @param input String input
+     * @param k maximum amount of ASTs
+     * @param weights weights of the rules (see Generator.getWeights), rules without a weight have weight 1. Can be null.
+     * @return null if not recognized, otherwise at most k ASTs from highest to lowest score
+     */
+    public List<AST> parseTopK(String input, int k, Map<NonTerminal, Map<List<Token>, Double>> weights) {
+        ParseForest forest = parseForest(input);
+        if (forest == null) {
+            return null;
+        }
+        KBestIterator it = new KBestIterator(buildSPPF(forest), weights);
+        List<AST> res = new ArrayList<>();
+        while (res.size() < k && it.hasNext()) {
+            res.add(it.next());
         }
         return res;
     }
 
     /**
-     * Start function of prune.
-     * @param l Parse Forest
-     * @return Pruned Parse Forest
+     * Parse an input in accordance with the grammar and draw ASTs uniformly at random from all its derivations.
+     * @param input String input
+     * @param n amount of ASTs to draw
+     * @param random source of randomness
+     * @return null if not recognized, otherwise n ASTs, drawn independently (empty if the input has no AST)
      */
-    public List<Set<ParseTreeEdge>> prune(List<Set<ParseTreeEdge>> l) {
-        if (l.isEmpty()) {
+    public List<AST> sampleParses(String input, int n, Random random) {
+        ParseForest forest = parseForest(input);
+        if (forest == null) {
             return null;
-        } else if (l.size() == 1) {
-            return l;
         }
-        //Delete all non-nullable ParseTreeEdges in the last set of the Parse Forest
-        //Additionally, push the prunestack if the last set contains a nesting return
-        Stack<ParseTreeEdge> prunestack = new Stack<>();
-        for (ParseTreeEdge edge : l.get(l.size() - 1)) {
-            if (!edge.getD().nullable()) {
-                l.get(l.size() - 1).remove(edge);
-            } else if (edge.getO() instanceof Pair && opentoclose.containsValue(edge.getC())) {
-                prunestack.push(edge);
+        List<AST> res = new ArrayList<>();
+        if (forest.size() == 0) {
+            return res;
+        }
+        ParseTreeSampler sampler = new ParseTreeSampler(buildSPPF(forest));
+        for (int i = 0; i < n; i++) {
+            res.add(sampler.sample(random));
+        }
+        return res;
+    }
+
+    /**
+     * Sets the priorities of the rules. When an input is parsed, the Parse Forest only keeps the alternatives of a NonTerminal with the highest priority
+     * at every position (see PrunerGenerator.disambiguate), so that ambiguities are resolved before any trace is extracted.
+     * @param priorities priorities of the rules (see Generator.getPriorities), rules without a priority have priority 0. Null removes all priorities.
+     */
+    public void setPriorities(Map<NonTerminal, Map<List<Token>, Integer>> priorities) {
+        pruner.setPriorities(priorities);
+    }
+
+    /**
+     * @return PrunerGenerator which assigns the ids of the ParseTreeEdges, for example to read an encoded Parse Forest
+     */
+    public PrunerGenerator getPruner() {
+        return pruner;
+    }
+
+    /**
+     * Sets a listener which receives the counters of every parse (see ParseStatistics).
+     * Without a listener no counters are kept, so parsing is not slowed down.
+     * @param metrics listener, null to stop reporting
+     */
+    public void setMetricsListener(MetricsListener metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Estimates the retained size of this automata, broken down into States, transitions, Colored Edges, ParseTreeEdges,
+     * color tables and the PrunerGenerator. See MemoryFootprint for the object layout which is assumed.
+     * @return estimated retained size
+     */
+    public MemoryFootprint footprint() {
+        MemoryFootprint.Counter counter = new MemoryFootprint.Counter();
+        List<Transition> transitions = new ArrayList<>();
+        map.values().forEach(s -> transitions.addAll(Arrays.asList(s)));
+        List<ColoredEdge> colored = new ArrayList<>();
+        coloredmap.values().forEach(s -> colored.addAll(Arrays.asList(s)));
+
+        //States with their pairs
+        Set<State> states = Collections.newSetFromMap(new IdentityHashMap<>());
+        states.add(start);
+        for (Transition t : transitions) {
+            states.add(t.getOrigin());
+            states.add(t.getDestination());
+            states.add(t.getStackAction().getState());
+        }
+        for (ColoredEdge t : colored) {
+            states.add(t.getOrigin());
+            states.add(t.getDestination());
+            states.add(t.getStackAction().getState());
+        }
+        for (State state : states) {
+            if (!counter.visit(state)) continue;
+            int pairs = state.getPairs().size();
+            counter.add(MemoryFootprint.object(12) + MemoryFootprint.treeSet(pairs) + MemoryFootprint.array(pairs, 4));
+            for (Pair<NonTerminal, NonTerminal> pair : state.getPairs()) {
+                if (counter.visit(pair)) counter.add(MemoryFootprint.object(8));
+                nonTerminal(counter, pair.getLeft());
+                nonTerminal(counter, pair.getRight());
             }
         }
+        long statesize = counter.next();
 
-        prune(l, l.size()-2, prunestack);
-        return l;
+        //Transitions, and the transitions and bitsets per State
+        counter.add(MemoryFootprint.treeMap(map.size()) + MemoryFootprint.hashMap(edgebits.size()));
+        for (Transition[] s : map.values()) {
+            counter.add(MemoryFootprint.array(s.length, 4));
+        }
+        for (Transition t : transitions) {
+            if (!counter.visit(t)) continue;
+            counter.add(MemoryFootprint.object(20) + MemoryFootprint.treeSet(t.getParseTreeEdges().size()));
+            transition(counter, t);
+        }
+        long transitionsize = counter.next();
+
+        //Colored Edges
+        counter.add(MemoryFootprint.treeMap(coloredmap.size()));
+        for (ColoredEdge[] s : coloredmap.values()) {
+            counter.add(MemoryFootprint.array(s.length, 4));
+        }
+        for (ColoredEdge t : colored) {
+            if (!counter.visit(t)) continue;
+            counter.add(MemoryFootprint.object(24) + MemoryFootprint.arrayList(t.getParseTreeEdgesList().size()));
+            for (Set<ParseTreeEdge> edges : t.getParseTreeEdgesList()) {
+                counter.add(MemoryFootprint.hashSet(edges.size()));
+            }
+            transition(counter, t);
+        }
+        long coloredsize = counter.next();
+
+        //ParseTreeEdges, the Colored Edges have their own copies
+        for (Transition t : transitions) {
+            for (ParseTreeEdge edge : t.getParseTreeEdges()) {
+                parseTreeEdge(counter, edge);
+            }
+        }
+        for (ColoredEdge t : colored) {
+            for (Set<ParseTreeEdge> edges : t.getParseTreeEdgesList()) {
+                for (ParseTreeEdge edge : edges) {
+                    parseTreeEdge(counter, edge);
+                }
+            }
+        }
+        long edgesize = counter.next();
+
+        //Color tables
+        counter.add(MemoryFootprint.hashMap(colors.size()) + MemoryFootprint.hashMap(opentoclose.size()));
+        for (Map.Entry<String, Integer> entry : colors.entrySet()) {
+            counter.string(entry.getKey());
+            if (counter.visit(entry.getValue()) && entry.getValue() >= 128) counter.add(MemoryFootprint.object(4));
+        }
+        for (Map.Entry<String, String> entry : opentoclose.entrySet()) {
+            counter.string(entry.getKey());
+            counter.string(entry.getValue());
+        }
+        long colorsize = counter.next();
+
+        TableRecognizer compiled = tables;
+        return new MemoryFootprint(statesize, transitionsize, coloredsize, edgesize, colorsize, pruner.footprint(),
+                compiled == null ? 0 : compiled.footprint());
     }
 
     /**
-     * Recursive prune function. Compares all edges of a set to an already pruned set and prunes if necessary.
-     * @param l Parse Forest
-     * @param i index on position in the Parse Forest
-     * @param prunestack internal Stack to relate nesting calls to already pruned nesting returns
+     * Estimates the size of the Parse Forest of an input before it is parsed, without the positions added by Colored Edges (see ParseForest.estimateFootprint)
+     * @param input String input
+     * @return estimated size in bytes
      */
-    private void prune(List<Set<ParseTreeEdge>> l, int i, Stack<ParseTreeEdge> prunestack) {
-        if (i == 0) {
-            return;
+    public long estimateForestFootprint(String input) {
+        return ParseForest.estimateFootprint(pruner, input.length());
+    }
+
+    private static void nonTerminal(MemoryFootprint.Counter counter, NonTerminal nt) {
+        if (counter.visit(nt)) {
+            counter.add(MemoryFootprint.object(9));
+            counter.string(nt.getValue());
         }
+    }
 
-        //compare next set to the already correct set
-        Set<ParseTreeEdge> correct = l.get(i+1);
-        Set<ParseTreeEdge> check = l.get(i);
-        check.removeIf(edge -> !checkEdge(edge, correct, prunestack));
+    /**
+     * Counts the symbol, Stackaction and bitsets of a transition
+     */
+    private void transition(MemoryFootprint.Counter counter, Transition t) {
+        counter.string(t.getC());
+        if (counter.visit(t.getStackAction())) {
+            counter.add(MemoryFootprint.object(12));
+        }
+        long[][] m = edgebits.get(t);
+        if (m != null && counter.visit(m)) {
+            counter.add(MemoryFootprint.array(m.length, 4));
+            for (long[] bits : m) {
+                if (counter.visit(bits)) counter.add(MemoryFootprint.array(bits.length, 8));
+            }
+        }
+    }
 
-        prune(l, i-1, prunestack);
+    private static void parseTreeEdge(MemoryFootprint.Counter counter, ParseTreeEdge edge) {
+        if (!counter.visit(edge)) return;
+        counter.add(MemoryFootprint.object(17));
+        if (edge.getO() instanceof Pair && counter.visit(edge.getO())) {
+            counter.add(MemoryFootprint.object(8));
+        }
+        counter.string(edge.getC());
     }
 
     /**
-     * Checks if a given edge can be linked to one of the edges of an already pruned set
-     * @param edge edge to be checked
-     * @param set already pruned set of edges
-     * @param prunestack internal Stack to relate nesting calls to already pruned nesting returns
-     * @return boolean, if the edge is correct or should be pruned
+     * @return counters of the running parse of this thread, null if they are not counted
      */
-    private boolean checkEdge(ParseTreeEdge edge, Set<ParseTreeEdge> set, Stack<ParseTreeEdge> prunestack) {
+    private ParseStatistics statistics() {
+        return (metrics == null) ? null : running.get();
+    }
 
-        //Check if edge contains a call symbol
-        if (opentoclose.containsKey(edge.getC())) {
+    /**
+     * Runs a parse method, reports its counters to the MetricsListener and records a ParseEvents.Parse event.
+     * A parse method called by another parse method adds its counters to the counters of the outer parse, so every call is reported once.
+     * @param method name of the parse method
+     * @param input String input
+     * @param parse parse method
+     * @return result of the parse method
+     */
+    private <T> T measure(String method, String input, Supplier<T> parse) {
+        ParseEvents.Parse event = new ParseEvents.Parse();
+        event.begin();
+        ParseStatistics res = null;
+        MetricsListener listener = metrics;
+        if (listener != null && running.get() == null) {
+            res = new ParseStatistics(input.length());
+            running.set(res);
+        }
+        long time = System.nanoTime();
+        T result = null;
+        try {
+            result = parse.get();
+            return result;
+        } finally {
+            if (res != null) {
+                res.finished(System.nanoTime() - time);
+                running.remove();
+                listener.parsed(res);
+            }
+            if (event.shouldCommit()) {
+                event.grammarId = ParseEvents.grammarId(start);
+                event.method = method;
+                event.inputLength = input.length();
+                event.accepted = result != null && !Boolean.FALSE.equals(result);
+                event.results = (result instanceof Set) ? ((Set<?>) result).size() : (event.accepted ? 1 : 0);
+                event.commit();
+            }
+        }
+    }
 
-            //If symbol is a call symbol but the stack is empty or the closing symbol on the stack did not relate
-            if (prunestack.isEmpty() || !prunestack.peek().getC().equals(opentoclose.get(edge.getC()))) {
-                return false;
+    /**
+     * @return if every transition carries exactly one ParseTreeEdge, so that every recognized input has a single derivation
+     */
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * Parse an input of a deterministic automata in a single pass. The AST is built while recognizing,
+     * without a Parse Forest, pruning or tracing.
+     * @param input String input
+     * @return null if not recognized or empty, otherwise the only AST
+     * @throws IllegalStateException if the automata is not deterministic
+     */
+    public AST parseDeterministic(String input) {
+        return measure("parseDeterministic", input, () -> {
+            if (!deterministic) {
+                throw new IllegalStateException("Automata has transitions with multiple ParseTreeEdges");
             }
+            return parseDeterministic(input, null);
+        });
+    }
 
-            //Determines if the opening of the nesting is related to an already pruned return symbol by peeking the stack
-            Pair<NonTerminal, NonTerminal> pair = (Pair<NonTerminal, NonTerminal>) prunestack.peek().getO();
-            if (pair.getLeft().equals(edge.getO()) && pair.getRight().equals(edge.getD())) {
-                prunestack.pop();
+    /**
+     * @param budget budget of the parse, of which the deadline and cancellation are checked every 1024 symbols. Null if unlimited.
+     */
+    private AST parseDeterministic(String input, ParseOptions.Budget budget) {
+        ParseStatistics statistics = statistics();
+        Stack<Pair<State, String>> stack = new Stack<>();
+        ASTBuilder builder = new ASTBuilder(opentoclose);
+        State state = start;
+        for (int i = 0; i < input.length(); i++) {
+            if (budget != null && (i & 1023) == 0) budget.check();
+            Transition t = step(state, input.charAt(i), stack, statistics);
+            if (t == null) {
+                return null;
+            }
+            for (long[] m : edgebits.get(t)) {
+                builder.add(pruner.getEdge(pruner.first(m)));
+            }
+            state = t.getDestination();
+        }
+        return (stack.isEmpty() && state.isFinal()) ? builder.getResult() : null;
+    }
 
-            //If the nesting call does not correspond to the nesting return on the stack
-            } else {
+    /**
+     * Same as parseDeterministic, but builds a CompactAST, which stores the nodes in int arrays instead of an object per node.
+     * This is the only parse method which builds a CompactAST directly. ASTs of other parse methods, e.g. of an ambiguous parse,
+     * can be converted with CompactAST.of after they are built.
+     * @param input String input
+     * @return null if not recognized or empty, otherwise the only AST
+     * @throws IllegalStateException if the automata is not deterministic
+     */
+    public CompactAST parseCompact(String input) {
+        return measure("parseCompact", input, () -> {
+            if (!deterministic) {
+                throw new IllegalStateException("Automata has transitions with multiple ParseTreeEdges");
+            }
+            if (input.isEmpty()) {
+                return null;
+            }
+            ParseStatistics statistics = statistics();
+            Stack<Pair<State, String>> stack = new Stack<>();
+            CompactASTBuilder builder = new CompactASTBuilder(opentoclose, input.length() * 2);
+            State state = start;
+            for (int i = 0; i < input.length(); i++) {
+                Transition t = step(state, input.charAt(i), stack, statistics);
+                if (t == null) {
+                    return null;
+                }
+                for (long[] m : edgebits.get(t)) {
+                    builder.add(pruner.getEdge(pruner.first(m)), i);
+                }
+                state = t.getDestination();
+            }
+            return (stack.isEmpty() && state.isFinal()) ? builder.getResult() : null;
+        });
+    }
+
+    /**
+     * Parse an input in accordance with the grammar and report a derivation to a ParseListener, without building ASTs.
+     * The events are reported in a single pass while the input is recognized. For a deterministic automata every edge is reported
+     * as soon as its symbol is read, while only the NonTerminals which are not exited yet are kept in memory.
+     * Otherwise the positions which are not reported yet are kept until they have a single derivation (see ParseEventStream),
+     * and the listener chooses which alternative is reported at every node which is still ambiguous at the end of the input.
+     * @param input String input
+     * @param listener listener, of which rejected is called if the input is not recognized after some events are reported
+     * @return if the input is recognized and has a derivation
+     */
+    public boolean parse(String input, ParseListener listener) {
+        return measure("parse(listener)", input, () -> {
+            ParseStatistics statistics = statistics();
+            Stack<Pair<State, String>> stack = new Stack<>();
+            ParseEventBuilder builder = new ParseEventBuilder(opentoclose, listener);
+            ParseEventStream events = deterministic ? null : new ParseEventStream(pruner, start.getPairs().first().getLeft(), builder);
+            State state = start;
+            for (int i = 0; i < input.length(); i++) {
+                Transition t = step(state, input.charAt(i), stack, statistics);
+                if (t == null) {
+                    listener.rejected(i);
+                    return false;
+                }
+                for (long[] m : edgebits.get(t)) {
+                    if (events == null) builder.add(pruner.getEdge(pruner.first(m)), i);
+                    else events.add(m, i);
+                }
+                state = t.getDestination();
+            }
+            if (!stack.isEmpty() || !state.isFinal() || (events != null && !events.finish())) {
+                listener.rejected(input.length());
                 return false;
             }
+            if (events == null) builder.finish();
+            return true;
+        });
+    }
+
+    /**
+     * Recognizes the input and returns its Pruned Parse Forest.
+     * @param input String input
+     * @return null if not recognized, otherwise the Pruned Parse Forest
+     */
+    public ParseForest parseForest(String input) {
+        return measure("parseForest", input, () -> parseForest(input, (ParseOptions.Budget) null));
+    }
+
+    /**
+     * Same as parseForest, but stops when recognizing or pruning exceeds the budget of the options
+     * @param input String input
+     * @param options budget of the parse, of which the maximum amount of derivations does not apply
+     * @return null if not recognized, otherwise the Pruned Parse Forest
+     * @throws BudgetExceededException if the budget is exceeded
+     */
+    public ParseForest parseForest(String input, ParseOptions options) {
+        return measure("parseForest(options)", input, () -> parseForest(input, options.start()));
+    }
 
-        //If edge contains a return symbol, push edge to the Stack
-        } else if (edge.getO() instanceof Pair && opentoclose.containsValue(edge.getC())) {
-            prunestack.push(edge);
+    private ParseForest parseForest(String input, ParseOptions.Budget budget) {
+        ParseForest forest = new ParseForest(pruner, budget == null ? input.length() : budget.forestCapacity(input.length()));
+        if (!recognize(input, forest, budget)) {
+            return null;
+        }
+        ParseEvents.Prune event = new ParseEvents.Prune();
+        ParseStatistics statistics = statistics();
+        if (statistics == null && !event.isEnabled()) {
+            pruner.prune(forest, budget);
+            return forest;
+        }
+        long before = forest.edgeCount();
+        event.begin();
+        long time = System.nanoTime();
+        pruner.prune(forest, budget);
+        time = System.nanoTime() - time;
+        long after = forest.edgeCount();
+        if (statistics != null) statistics.pruned(before, after, time);
+        if (event.shouldCommit()) {
+            event.grammarId = ParseEvents.grammarId(start);
+            event.inputLength = input.length();
+            event.forestEdges = before;
+            event.prunedForestEdges = after;
+            event.commit();
         }
+        return forest;
+    }
 
-        //Check if the current edge links to an edge in the previously pruned set
-        for (ParseTreeEdge edge2 : set) {
+    /**
+     * Parse an input in accordance with the grammar. Returns a Shared Packed Parse Forest containing all derivations if recognized.
+     * @param input String input
+     * @return null if not recognized or empty, otherwise the root of the SPPF
+     */
+    public SPPF parseSPPF(String input) {
+        ParseForest forest = parseForest(input);
+        if (forest == null || forest.size() == 0) {
+            return null;
+        }
+        return buildSPPF(forest);
+    }
 
-            //If the destination of the edge exists as an origin in the already pruned set
-            if (edge2.getO() instanceof NonTerminal && edge.getD().equals(edge2.getO())) {
-                return true;
+    /**
+     * Builds the SPPF of a Pruned Parse Forest in a single iterative pass from right to left.
+     * A NonTerminal node is identified by its NonTerminal and its first position, as it always spans until the end of its nesting level.
+     * Its alternatives are the edges at its first position with the NonTerminal as origin, for a call combined with every matching return.
+     * Positions of the SPPF are positions in the Parse Forest.
+     * @param forest Pruned Parse Forest
+     * @return root of the SPPF, or null if the forest contains no derivation
+     */
+    public SPPF buildSPPF(ParseForest forest) {
+        int n = forest.size();
+        if (n == 0) {
+            return null;
+        }
+        Map<Pair<NonTerminal, Integer>, SPPF> nodes = new HashMap<>();
+        SPPF[] terminals = new SPPF[n];
 
-            //If trace leaves current context (for which it needs to be nullable)
-            //and continues at the end of a nesting rule (for which the destination needs to be a Pair)
-            } else if (edge2.getO() instanceof Pair && edge.getD().nullable()) {
-                return true;
+        //array-backed stack of the positions of the returns of all nestings containing the current position
+        int[] returnstack = new int[16];
+        int top = 0;
+
+        for (int i = n - 1; i >= 0; i--) {
+            int call = -1;
+            if (isReturn(forest, i)) {
+                if (top == returnstack.length) {
+                    returnstack = Arrays.copyOf(returnstack, top * 2);
+                }
+                returnstack[top++] = i;
+                continue;
+            } else if (isCall(forest, i)) {
+                if (top == 0) continue;
+                call = returnstack[--top];
+            }
+            int end = (top == 0) ? n : returnstack[top - 1];
+
+            for (int id = forest.next(i, 0); id >= 0; id = forest.next(i, id + 1)) {
+                ParseTreeEdge edge = pruner.getEdge(id);
+                NonTerminal o = (NonTerminal) edge.getO();
+
+                //Regular rule: o => c d
+                if (call < 0) {
+                    if (derives(edge.getD(), i + 1, end, nodes)) {
+                        List<SPPF> alternative = new ArrayList<>();
+                        List<Pair<NonTerminal, List<Token>>> rules = new ArrayList<>();
+                        alternative.add(terminal(edge, i, terminals));
+                        rules.add(new Pair<>(o, Arrays.asList(new Token(TokenType.String, edge.getC()), edge.getD())));
+                        if (i + 1 < end) alternative.add(nodes.get(new Pair<>(edge.getD(), i + 1)));
+                        else rules.add(epsilonRule(edge.getD()));
+                        symbol(o, i, end, nodes).addChildList(alternative, rules);
+                    }
+                    continue;
+                }
+
+                //Nesting rule: o => [ c d c' ] d'
+                if (!derives(edge.getD(), i + 1, call, nodes)) continue;
+                Pair<NonTerminal, NonTerminal> pair = new Pair<>(o, edge.getD());
+                for (int id2 = forest.next(call, 0); id2 >= 0; id2 = forest.next(call, id2 + 1)) {
+                    ParseTreeEdge edge2 = pruner.getEdge(id2);
+                    if (!pair.equals(edge2.getO()) || !derives(edge2.getD(), call + 1, end, nodes)) continue;
+                    List<SPPF> alternative = new ArrayList<>();
+                    List<Pair<NonTerminal, List<Token>>> rules = new ArrayList<>();
+                    alternative.add(terminal(edge, i, terminals));
+                    rules.add(new Pair<>(o, Arrays.asList(new Token(TokenType.NestOpen, edge.getC()), edge.getD(), new Token(TokenType.NestClose, edge2.getC()), edge2.getD())));
+                    if (i + 1 < call) alternative.add(nodes.get(new Pair<>(edge.getD(), i + 1)));
+                    else rules.add(epsilonRule(edge.getD()));
+                    if (!edge2.isColored()) alternative.add(terminal(edge2, call, terminals));
+                    if (call + 1 < end) alternative.add(nodes.get(new Pair<>(edge2.getD(), call + 1)));
+                    else rules.add(epsilonRule(edge2.getD()));
+                    symbol(o, i, end, nodes).addChildList(alternative, rules);
+                }
             }
         }
-        return false;
+        return nodes.get(new Pair<>(start.getPairs().first().getLeft(), 0));
+    }
+
+    /**
+     * @return the epsilon rule of a nullable NonTerminal
+     */
+    private Pair<NonTerminal, List<Token>> epsilonRule(NonTerminal nt) {
+        return new Pair<>(nt, Collections.singletonList(new Token(TokenType.Epsilon, null)));
+    }
+
+    /**
+     * Checks if a NonTerminal can derive the positions from i until the end of its nesting level
+     * @param nt NonTerminal
+     * @param i first position
+     * @param end end of the nesting level
+     * @param nodes already created NonTerminal nodes
+     * @return if a derivation exists
+     */
+    private boolean derives(NonTerminal nt, int i, int end, Map<Pair<NonTerminal, Integer>, SPPF> nodes) {
+        return (i == end) ? nt.nullable() : nodes.containsKey(new Pair<>(nt, i));
+    }
+
+    /**
+     * Returns the shared NonTerminal node for a NonTerminal at a position, creating it if it does not exist yet
+     */
+    private SPPF symbol(NonTerminal nt, int i, int end, Map<Pair<NonTerminal, Integer>, SPPF> nodes) {
+        return nodes.computeIfAbsent(new Pair<>(nt, i), key -> new SPPF(nt.getValue(), i, end));
+    }
+
+    /**
+     * Returns the shared terminal node for a position, creating it if it does not exist yet
+     */
+    private SPPF terminal(ParseTreeEdge edge, int i, SPPF[] terminals) {
+        if (terminals[i] == null) {
+            terminals[i] = new SPPF(edge.getC(), i, i + 1);
+        }
+        return terminals[i];
+    }
+
+    /**
+     * @return if the edges at position i of the Parse Forest consume an opening nesting symbol
+     */
+    private boolean isCall(ParseForest forest, int i) {
+        int id = forest.next(i, 0);
+        return id >= 0 && opentoclose.containsKey(pruner.getEdge(id).getC());
+    }
+
+    /**
+     * @return if the edges at position i of the Parse Forest consume a closing nesting symbol
+     */
+    private boolean isReturn(ParseForest forest, int i) {
+        int id = forest.next(i, 0);
+        return id >= 0 && pruner.getEdge(id).getO() instanceof Pair;
+    }
+
+    /**
+     * Evaluates all derivations of an input in a semiring, without enumerating them.
+     * The derivation of the empty input only applies the epsilon rule of the start NonTerminal.
+     * @param input String input
+     * @param semiring semiring, for example Semiring.COUNTING, Semiring.VITERBI, Semiring.TROPICAL or Semiring.INSIDE
+     * @param weights weights of the rules (see Generator.getWeights), rules without a weight have value one. Can be null.
+     * @return zero if not recognized, otherwise the value of all derivations
+     */
+    public <T> T evaluate(String input, Semiring<T> semiring, Map<NonTerminal, Map<List<Token>, Double>> weights) {
+        ParseForest forest = parseForest(input);
+        if (forest == null) {
+            return semiring.zero();
+        } else if (forest.size() == 0) {
+            Pair<NonTerminal, List<Token>> rule = epsilonRule(start.getPairs().first().getLeft());
+            return SPPF.weight(semiring, weights, rule.getLeft(), rule.getRight());
+        }
+        SPPF sppf = buildSPPF(forest);
+        return (sppf == null) ? semiring.zero() : sppf.evaluate(semiring, weights);
+    }
+
+    /**
+     * Counts all derivations of an input, without enumerating them.
+     * @param input String input
+     * @return amount of derivations, 0 if not recognized
+     */
+    public BigInteger countParses(String input) {
+        return evaluate(input, Semiring.COUNTING, null);
+    }
+
+    /**
+     * Build an AST for a given trace
+     * @param trace trace to be converted to AST
+     * @return AST corresponding to the trace
+     */
+    public AST buildAST(List<ParseTreeEdge> trace) {
+        return buildAST(trace, null);
+    }
+
+    /**
+     * @param budget budget of the parse, of which the deadline and cancellation are checked every 1024 edges. Null if unlimited.
+     * @return AST corresponding to the trace, or null if the budget is exceeded
+     */
+    private AST buildAST(List<ParseTreeEdge> trace, ParseOptions.Budget budget) {
+        ASTBuilder builder = new ASTBuilder(opentoclose);
+        for (int i = 0; i < trace.size(); i++) {
+            if (budget != null && (i & 1023) == 0 && budget.expired()) return null;
+            builder.add(trace.get(i));
+        }
+        return builder.getResult();
+    }
+
+    /**
+     * Extracts all traces based on a given starting point PTE.
+     * Branches share their prefix and nesting stack (see TraceExtractor), so ambiguous branches do not influence each other.
+     * @param start starting PTE
+     * @param l Pruned Parse Forest
+     * @return all valid traces from the given starting point
+     */
+    public Set<List<ParseTreeEdge>> puretrace(ParseTreeEdge start, List<Set<ParseTreeEdge>> l) {
+        return puretrace(start, l, (ParseOptions.Budget) null);
+    }
+
+    /**
+     * @param budget budget of the parse, null if unlimited
+     * @return the valid traces from the given starting point which are found before the budget is exceeded
+     */
+    private Set<List<ParseTreeEdge>> puretrace(ParseTreeEdge start, List<Set<ParseTreeEdge>> l, ParseOptions.Budget budget) {
+        ParseEvents.Puretrace event = new ParseEvents.Puretrace();
+        event.begin();
+        Set<List<ParseTreeEdge>> res = new TraceExtractor(l, opentoclose, budget).extract(start);
+        commit(event, l, res, false);
+        return res;
+    }
+
+    /**
+     * Same as puretrace, but explores ambiguous branches in parallel in a ForkJoinPool.
+     * @param start starting PTE
+     * @param l Pruned Parse Forest
+     * @param pool pool in which the branches are explored
+     * @return all valid traces from the given starting point
+     */
+    public Set<List<ParseTreeEdge>> puretrace(ParseTreeEdge start, List<Set<ParseTreeEdge>> l, ForkJoinPool pool) {
+        ParseEvents.Puretrace event = new ParseEvents.Puretrace();
+        event.begin();
+        Set<List<ParseTreeEdge>> res = new TraceExtractor(l, opentoclose).extract(start, pool);
+        commit(event, l, res, true);
+        return res;
+    }
+
+    private void commit(ParseEvents.Puretrace event, List<Set<ParseTreeEdge>> l, Set<List<ParseTreeEdge>> traces, boolean parallel) {
+        if (event.shouldCommit()) {
+            event.grammarId = ParseEvents.grammarId(start);
+            event.inputLength = l.size();
+            event.traces = traces.size();
+            event.parallel = parallel;
+            event.commit();
+        }
+    }
+
+    /**
+     * Prunes a Parse Forest given as a List of Sets.
+     * Converts every set of the Parse Forest to a bitset, so that the sets can be pruned by the PrunerGenerator.
+     * @param l Parse Forest
+     * @return Pruned Parse Forest
+     */
+    public List<Set<ParseTreeEdge>> prune(List<Set<ParseTreeEdge>> l) {
+        if (l.isEmpty()) {
+            return null;
+        }
+        ParseForest forest = new ParseForest(pruner, l.size());
+        for (Set<ParseTreeEdge> s : l) {
+            forest.add(pruner.toBits(s));
+        }
+        pruner.prune(forest);
+        for (int i = 0; i < l.size(); i++) {
+            int position = i;
+            l.get(i).removeIf(edge -> pruner.getId(edge) < 0 || !forest.contains(position, pruner.getId(edge)));
+        }
+        return l;
     }
 
     /**
@@ -248,84 +989,127 @@ public class Automata {
      * @return if input is recognized by the grammar automata
      */
     public boolean recognize(String input) {
-        stack = new Stack<>();
-        return recognize(start, input);
+        return measure("recognize", input, () -> {
+            return recognize(input, null, null);
+        });
     }
 
     /**
-     * Helper method for the public recognize method. Recursively handles the first character of the input.
-     * If the String is empty the automata traversal is done. If then the stack is empty and is in a final state, return true.
-     * @param state current State
-     * @param input (remaining) input String
+     * Same as recognize, but stops when the parse is cancelled or past the deadline of the options
+     * @param input input String
+     * @param options budget of the parse
      * @return if input is recognized by the grammar automata
+     * @throws BudgetExceededException if the budget is exceeded
      */
-    private boolean recognize(State state, String input) {
-        if (input.length() == 0) {
-            return (stack.isEmpty() && state.isFinal());
-        } else if (!map.containsKey(state)) {
-            return false;
-        }
-        for (Transition t : map.get(state)) {
-            if (t.getC().equals(input.charAt(0) + "") && doStackAction(t.getStackAction())) {
-                return recognize(t.getDestination(), input.substring(1));
-            }
-        }
-        if (!stack.isEmpty() && coloredmap.containsKey(state)) {
-            for (ColoredEdge t : coloredmap.get(state)) {
-                if (t.getC().equals(input.charAt(0) + "")) {
-                    while (colors.get(stack.peek().getRight()) > colors.get(t.getC())) {
-                        stack.pop();
-                    }
-                    if (colors.get(stack.peek().getRight()).equals(colors.get(t.getC())) && doStackAction(t.getStackAction())) {
-                        return recognize(t.getDestination(), input.substring(1));
+    public boolean recognize(String input, ParseOptions options) {
+        return measure("recognize(options)", input, () -> {
+            return recognize(input, null, options.start());
+        });
+    }
+
+    /**
+     * Same as recognize(input, forest, budget) with an unlimited budget
+     */
+    boolean recognize(String input, ParseForest forest) {
+        return recognize(input, forest, null);
+    }
+
+    /**
+     * Iteratively handles every character of the input.
+     * If the String is consumed the automata traversal is done. If then the stack is empty and is in a final state, return true.
+     * @param input input String
+     * @param forest Parse Forest in which the ParseTreeEdges of every traversed transition are stored, or null if only recognizing
+     * @param budget budget of the parse, of which the deadline and cancellation are checked every 1024 symbols and the forest edges at every symbol.
+     *               Null if unlimited.
+     * @return if input is recognized by the grammar automata
+     */
+    boolean recognize(String input, ParseForest forest, ParseOptions.Budget budget) {
+        long time = System.nanoTime();
+        ParseStatistics statistics = statistics();
+        Stack<Pair<State, String>> stack = new Stack<>();
+        State state = start;
+        boolean res = true;
+        for (int i = 0; i < input.length() && res; i++) {
+            if (budget != null && (i & 1023) == 0) budget.check();
+            Transition t = step(state, input.charAt(i), stack, statistics);
+            if (t == null) {
+                res = false;
+            } else {
+                if (forest != null) {
+                    for (long[] m : edgebits.get(t)) {
+                        forest.add(m);
+                        if (budget != null) budget.forestEdges(count(m));
                     }
                 }
+                state = t.getDestination();
             }
         }
-        return false;
+        if (statistics != null) statistics.recognized(System.nanoTime() - time);
+        return res && stack.isEmpty() && state.isFinal();
+    }
+
+    /**
+     * @return amount of ParseTreeEdges in a bitset
+     */
+    private static int count(long[] m) {
+        int res = 0;
+        for (long word : m) res += Long.bitCount(word);
+        return res;
     }
 
     /**
-     * Same method as 2-parameter recognizer. However, this recognizer keeps track of the rules of the traversed transition for a parser to use.
+     * Handles a single character of the input.
      * @param state current State
-     * @param input (remaining) input String
-     * @param l List of Sets of ParseTreeEdges for every possible rule for every transition
-     * @return
+     * @param c next character
+     * @param stack stack of the parse
+     * @param statistics counters of the parse, null if not counted
+     * @return traversed Transition or Colored Edge, or null if no transition is possible
      */
-    private boolean recognize(State state, String input, List<Set<ParseTreeEdge>> l) {
-        if (input.length() == 0) {
-            return (stack.isEmpty() && state.isFinal());
+    private Transition step(State state, char c, Stack<Pair<State, String>> stack, ParseStatistics statistics) {
+        Transition[] transitions = map.get(state);
+        if (transitions == null) {
+            return null;
         }
-        for (Transition t : map.get(state)) {
-            if (t.getC().equals(input.charAt(0) + "") && doStackAction(t.getStackAction())) {
-                l.add(new HashSet<>(t.getParseTreeEdges()));
-                return recognize(t.getDestination(), input.substring(1), l);
+        for (Transition t : transitions) {
+            if (matches(t.getC(), c) && doStackAction(t.getStackAction(), stack)) {
+                if (statistics != null) statistics.transition(false, stack.size());
+                return t;
             }
         }
-        if (!stack.isEmpty() && coloredmap.containsKey(state)) {
-            for (ColoredEdge t : coloredmap.get(state)) {
-                if (t.getC().equals(input.charAt(0) + "")) {
-                    while (colors.get(stack.peek().getRight()) > colors.get(t.getC())) {
+        ColoredEdge[] colored = stack.isEmpty() ? null : coloredmap.get(state);
+        if (colored != null) {
+            for (ColoredEdge t : colored) {
+                if (matches(t.getC(), c)) {
+                    while (!stack.isEmpty() && colors.get(stack.peek().getRight()) > colors.get(t.getC())) {
                         stack.pop();
+                        if (statistics != null) statistics.poppedFrame();
                     }
-                    if (colors.get(stack.peek().getRight()).equals(colors.get(t.getC())) && doStackAction(t.getStackAction())) {
-                        for (Set<ParseTreeEdge> s : t.getParseTreeEdgesList()) {
-                            l.add(new HashSet<>(s));
-                        }
-                        return recognize(t.getDestination(), input.substring(1));
+                    if (!stack.isEmpty() && colors.get(stack.peek().getRight()).equals(colors.get(t.getC())) && doStackAction(t.getStackAction(), stack)) {
+                        if (statistics != null) statistics.transition(true, stack.size());
+                        return t;
                     }
                 }
             }
         }
-        return false;
+        return null;
+    }
+
+    /**
+     * @param symbol symbol of a transition
+     * @param c character of the input
+     * @return if the transition consumes the character
+     */
+    private boolean matches(String symbol, char c) {
+        return symbol.length() == 1 && symbol.charAt(0) == c;
     }
 
     /**
      * Try to do the given Stackaction. If possible, return true, if not, return false.
      * @param sa Stackaction to be executed
+     * @param stack stack of the parse
      * @return success of execution
      */
-    private boolean doStackAction(Stackaction sa) {
+    private boolean doStackAction(Stackaction sa, Stack<Pair<State, String>> stack) {
         switch (sa.getTtype()) {
             case INTERNAL:
                 return true;
@@ -359,12 +1143,12 @@ public class Automata {
      * @return Set of all possible ASTs
      */
     public Set<AST> oldparse(String input) {
-        stack = new Stack<>();
-        List<Set<ParseTreeEdge>> l = new ArrayList<>();
-        if (!recognize(start, input, l)) {
+        ParseForest forest = parseForest(input);
+        if (forest == null) {
             return null;
         }
-        List<Set<ParseTreeEdge>> prunedParseForest = prune(l);
+        List<Set<ParseTreeEdge>> l = forest.toList();
+        List<Set<ParseTreeEdge>> prunedParseForest = l;
         Set<AST> res = new HashSet<>();
         if (input.equals("") || prunedParseForest.isEmpty()) {
             return res;
@@ -437,108 +1221,4 @@ public class Automata {
         return res;
     }
 
-    /**
-     * THIS FUNCTION IS NOT USED
-     * Test function for parsing of SPPFs. Function is not completed nor tested.
-     * @param input
-     * @return
-     */
-    public SPPF parseSPPF(String input) {
-        stack = new Stack<>();
-        List<Set<ParseTreeEdge>> l = new ArrayList<>();
-        if (!recognize(start, input, l)) {
-            return null;
-        }
-        List<Set<ParseTreeEdge>> prunedParseForest = prune(l);
-        if (input.equals("") || prunedParseForest.isEmpty()) {
-            return null;
-        }
-        TreeMap<SPPF, SPPF> existingSPPFs = new TreeMap<>();
-
-        for (ParseTreeEdge start : prunedParseForest.get(0)) {
-            SPPF sppf = new SPPF(start.getO().toString(), existingSPPFs);
-            Stack<Pair<NonTerminal, NonTerminal>> s = new Stack<>();
-            Stack<Pair<Integer, SPPF>> returnstack = new Stack<>();
-            for (SPPF child : traceSPPF(start, l, s, returnstack, existingSPPFs, 1)) {
-                List<SPPF> childlist = new ArrayList<>();
-                childlist.add(new SPPF(start.getC(), existingSPPFs));
-                childlist.add(child);
-                sppf.addChildList(childlist);
-            }
-            return sppf;
-        }
-        return null;
-    }
-
-    /**
-     * THIS FUNCTION IS NOT USED
-     * Test function for creation of SPPFs during extraction. Function is not completed nor tested.
-     * @param start
-     * @param l
-     * @param s
-     * @param returnstack
-     * @param existingSPPFs
-     * @param i
-     * @return
-     */
-    public Set<SPPF> traceSPPF(ParseTreeEdge start, List<Set<ParseTreeEdge>> l, Stack<Pair<NonTerminal, NonTerminal>> s, Stack<Pair<Integer, SPPF>> returnstack, TreeMap<SPPF, SPPF> existingSPPFs, int i) {
-        Set<SPPF> res = new HashSet<>();
-
-        if (i == l.size()) {
-            res.add(new SPPF(start.getC(), existingSPPFs));
-            return res;
-        }
-
-        for (ParseTreeEdge edge : l.get(i)) {
-            if (start.getD().equals(edge.getO()) && opentoclose.containsKey(start.getC())) {
-                s.push(new Pair<>((NonTerminal) start.getO(), start.getD()));
-
-                SPPF sppf = new SPPF(start.getO().toString(), existingSPPFs);
-                Pair<Integer, SPPF> returnvalue = null;
-                for (SPPF child : traceSPPF(edge, l, s, returnstack, existingSPPFs, i+1)) {
-                    if (returnvalue == null) returnvalue = returnstack.pop();
-                    for (SPPF child2 : traceSPPF(edge, l, s, returnstack, existingSPPFs, returnvalue.getLeft())) {
-                        List<SPPF> childlist = new ArrayList<>();
-                        childlist.add(new SPPF(start.getC(), existingSPPFs));
-                        childlist.add(child);
-                        childlist.add(returnvalue.getRight());
-                        childlist.add(child2);
-
-                        sppf.addChildList(childlist);
-                    }
-
-
-                }
-                res.add(sppf);
-
-
-
-                //Regular transition
-            } else if (start.getD().equals(edge.getO())) {
-                SPPF sppf = new SPPF(start.getO().toString(), existingSPPFs);
-                for (SPPF child : traceSPPF(edge, l, s, returnstack, existingSPPFs, i+1)) {
-                    List<SPPF> childlist = new ArrayList<>();
-                    childlist.add(new SPPF(start.getC(), existingSPPFs));
-                    childlist.add(child);
-                    sppf.addChildList(childlist);
-                }
-                res.add(sppf);
-
-            } else if (start.getD().nullable() && edge.getO() instanceof Pair
-                    && !s.isEmpty() && s.peek().equals(edge.getO())
-            ) {
-                s.pop();
-                SPPF sppf = new SPPF(start.getO().toString(), existingSPPFs);
-                if (!start.isColored()) {
-                    List<SPPF> list = new ArrayList<>();
-                    list.add(new SPPF(start.getC(), existingSPPFs));
-                    sppf.addChildList(list);
-                }
-                returnstack.push(new Pair<>(i, sppf));
-
-            }
-        }
-        return res;
-    }
-
 }
@@ -0,0 +1,59 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs a parse method of one shared Automata for every input of a batch on an Executor.
+ * The inputs are split into chunks, a few per thread, so that millions of small inputs do not each need their own task,
+ * while a chunk with slow inputs does not keep the other threads idle.
+ */
+class BatchParser {
+
+    //Amount of chunks per thread of the parallelism
+    private static final int CHUNKS = 8;
+
+    private BatchParser() {
+    }
+
+    /**
+     * @param inputs inputs of the batch
+     * @param parse parse method, called concurrently for multiple inputs
+     * @param executor executor on which the chunks run
+     * @param parallelism expected amount of threads of the executor
+     * @param listener receives every result when its input is done, concurrently from the threads of the executor.
+     *                 An exception of the listener fails the whole batch. Can be null.
+     * @return results in the order of the inputs
+     */
+    static <T> List<BatchResult<T>> run(List<? extends CharSequence> inputs, Function<String, T> parse, Executor executor,
+                                        int parallelism, Consumer<BatchResult<T>> listener) {
+        int n = inputs.size();
+        List<BatchResult<T>> res = new ArrayList<>(Collections.nCopies(n, null));
+        int chunk = Math.max(1, n / (Math.max(1, parallelism) * CHUNKS));
+        List<CompletableFuture<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < n; from += chunk) {
+            int first = from;
+            int last = Math.min(n, from + chunk);
+            chunks.add(CompletableFuture.runAsync(() -> {
+                for (int i = first; i < last; i++) {
+                    BatchResult<T> result = parse(i, inputs.get(i), parse);
+                    res.set(i, result);
+                    if (listener != null) listener.accept(result);
+                }
+            }, executor));
+        }
+        CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).join();
+        return res;
+    }
+
+    private static <T> BatchResult<T> parse(int index, CharSequence input, Function<String, T> parse) {
+        try {
+            return new BatchResult<>(index, parse.apply(input.toString()), null);
+        } catch (RuntimeException e) {
+            return new BatchResult<>(index, null, e);
+        }
+    }
+}
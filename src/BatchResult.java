@@ -0,0 +1,52 @@
+/**
+ * Result of a single input of a batch, see Automata.recognizeAll and Automata.parseAll.
+ * An input which fails, e.g. by exceeding its ParseOptions, holds its exception instead of a value, so that the other inputs are not affected.
+ * @param <T> type of the value
+ */
+public class BatchResult<T> {
+
+    private final int index;
+    private final T value;
+    private final RuntimeException error;
+
+    BatchResult(int index, T value, RuntimeException error) {
+        this.index = index;
+        this.value = value;
+        this.error = error;
+    }
+
+    /**
+     * @return position of the input in the batch
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return if the input did not fail
+     */
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return value of the input, e.g. null for a parse which is not recognized
+     * @throws RuntimeException the exception of the input if it failed
+     */
+    public T get() {
+        if (error != null) throw error;
+        return value;
+    }
+
+    /**
+     * @return exception of the input, null if it did not fail
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return index + ": " + (error == null ? value : error);
+    }
+}
@@ -0,0 +1,158 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Reads the encodings of BinaryWriter from a ByteBuffer, for example a direct or memory-mapped buffer.
+ * The nodes are decoded eagerly into new objects, and every symbol of the symbol table is decoded to a String once.
+ * The position of the buffer is advanced past the encoding.
+ */
+public class BinaryReader {
+
+    private final ByteBuffer buffer;
+    private final byte kind;
+    private final String[] symbols;
+
+    /**
+     * Reads the kind and the symbol table of an encoding
+     * @param buffer buffer positioned at the start of the encoding
+     */
+    public BinaryReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.kind = buffer.get();
+        this.symbols = new String[varint()];
+        for (int i = 0; i < symbols.length; i++) {
+            int length = varint();
+            if (buffer.hasArray()) {
+                symbols[i] = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+                buffer.position(buffer.position() + length);
+            } else {
+                byte[] b = new byte[length];
+                buffer.get(b);
+                symbols[i] = new String(b, StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * @return the encoded AST
+     * @throws IllegalStateException if the encoding is not an AST
+     */
+    public AST readAST() {
+        expect(BinaryWriter.AST);
+        int n = varint();
+        AST root = null;
+        //nodes of which not all children are read yet, with their amount of missing children
+        Stack<AST> open = new Stack<>();
+        Stack<Integer> missing = new Stack<>();
+        for (int k = 0; k < n; k++) {
+            AST node = new AST(symbols[varint()]);
+            int children = varint();
+            if (root == null) {
+                root = node;
+            } else {
+                open.peek().addChild(node);
+                missing.push(missing.pop() - 1);
+            }
+            while (!missing.isEmpty() && missing.peek() == 0) {
+                open.pop();
+                missing.pop();
+            }
+            if (children > 0) {
+                open.push(node);
+                missing.push(children);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * @return root of the encoded SPPF
+     * @throws IllegalStateException if the encoding is not an SPPF
+     */
+    public SPPF readSPPF() {
+        expect(BinaryWriter.SPPF);
+        SPPF[] nodes = new SPPF[varint()];
+        for (int k = 0; k < nodes.length; k++) {
+            String value = symbols[varint()];
+            int start = varint();
+            SPPF node = new SPPF(value, start, start + varint());
+            int alternatives = varint();
+            for (int a = 0; a < alternatives; a++) {
+                int c = varint();
+                List<SPPF> children = new ArrayList<>(c);
+                for (int i = 0; i < c; i++) {
+                    children.add(nodes[varint()]);
+                }
+                int r = varint();
+                List<Pair<NonTerminal, List<Token>>> rules = new ArrayList<>(r);
+                for (int i = 0; i < r; i++) {
+                    NonTerminal nt = new NonTerminal(symbols[varint()]);
+                    int t = varint();
+                    List<Token> tokens = new ArrayList<>(t);
+                    for (int j = 0; j < t; j++) {
+                        tokens.add(token(TokenType.values()[varint()], varint()));
+                    }
+                    rules.add(new Pair<>(nt, tokens));
+                }
+                node.addChildList(children, rules);
+            }
+            nodes[k] = node;
+        }
+        return (nodes.length == 0) ? null : nodes[nodes.length - 1];
+    }
+
+    /**
+     * @param pruner PrunerGenerator of the automata which created the Parse Forest
+     * @return the encoded Parse Forest
+     * @throws IllegalStateException if the encoding is not a Parse Forest of the same automata
+     */
+    public ParseForest readForest(PrunerGenerator pruner) {
+        expect(BinaryWriter.FOREST);
+        if (symbols.length != pruner.size()) {
+            throw new IllegalStateException("Parse Forest was written by a different automata");
+        }
+        for (int id = 0; id < symbols.length; id++) {
+            if (!symbols[id].equals(BinaryWriter.edgeSymbol(pruner.getEdge(id)))) {
+                throw new IllegalStateException("Parse Forest was written by a different automata");
+            }
+        }
+        int n = varint();
+        ParseForest res = new ParseForest(pruner, n);
+        long[] m = new long[pruner.getWords()];
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(m, 0);
+            int count = varint();
+            int id = 0;
+            for (int k = 0; k < count; k++) {
+                id += varint();
+                PrunerGenerator.set(m, id);
+            }
+            res.add(m);
+        }
+        return res;
+    }
+
+    private Token token(TokenType type, int value) {
+        String s = (value == 0) ? null : symbols[value - 1];
+        return (type == TokenType.NonTerminal) ? new NonTerminal(s) : new Token(type, s);
+    }
+
+    private void expect(byte expected) {
+        if (kind != expected) {
+            throw new IllegalStateException("Encoding is of kind " + kind + " instead of " + expected);
+        }
+    }
+
+    private int varint() {
+        int res = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            res |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return res;
+    }
+}
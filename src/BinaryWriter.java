@@ -0,0 +1,190 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compact binary encoding of parse results, read by BinaryReader.
+ * Every encoding starts with its kind and a symbol table: the amount of symbols followed by every symbol as a length and its UTF-8 bytes.
+ * The body only refers to symbols by their index. All integers are unsigned varints (7 bits per byte, lowest bits first).
+ *      - AST: amount of nodes, then every node in pre-order as its symbol and its amount of children.
+ *      - SPPF: amount of nodes, then every node in post-order (children before parents, the root last) as its symbol, start, length and alternatives.
+ *        Every alternative holds its children as indices of earlier nodes and its rules as a NonTerminal followed by its tokens.
+ *      - ParseForest: the ParseTreeEdges of the automata are the symbols, the body holds the amount of positions
+ *        and for every position the amount of edges and their ids, each as the difference with the previous id.
+ */
+public class BinaryWriter {
+
+    static final byte AST = 1;
+    static final byte SPPF = 2;
+    static final byte FOREST = 3;
+
+    private final List<String> symbols = new ArrayList<>();
+    private final Map<String, Integer> symbolids = new HashMap<>();
+    private byte[] body = new byte[64];
+    private int size = 0;
+
+    private BinaryWriter() {
+    }
+
+    /**
+     * @param ast AST
+     * @return encoding of the AST, ready to be read
+     */
+    public static ByteBuffer write(AST ast) {
+        BinaryWriter w = new BinaryWriter();
+        List<AST> nodes = new ArrayList<>();
+        ast.preOrder().forEachRemaining(nodes::add);
+        w.varint(nodes.size());
+        for (AST node : nodes) {
+            w.varint(w.symbol(node.getValue()));
+            w.varint(node.getChildren().size());
+        }
+        return w.toByteBuffer(AST);
+    }
+
+    /**
+     * @param root root of the SPPF
+     * @return encoding of the SPPF, in which shared nodes are written once
+     */
+    public static ByteBuffer write(SPPF root) {
+        BinaryWriter w = new BinaryWriter();
+
+        //number all nodes in post-order, so that children are read before their parents
+        Map<SPPF, Integer> index = new HashMap<>();
+        List<SPPF> nodes = new ArrayList<>();
+        Stack<SPPF> todo = new Stack<>();
+        todo.push(root);
+        while (!todo.isEmpty()) {
+            SPPF node = todo.peek();
+            if (index.containsKey(node)) {
+                todo.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (List<SPPF> alternative : node.getChildren()) {
+                for (SPPF child : alternative) {
+                    if (!index.containsKey(child)) {
+                        todo.push(child);
+                        ready = false;
+                    }
+                }
+            }
+            if (!ready) continue;
+            todo.pop();
+            index.put(node, nodes.size());
+            nodes.add(node);
+        }
+
+        w.varint(nodes.size());
+        for (SPPF node : nodes) {
+            w.varint(w.symbol(node.getValue()));
+            w.varint(node.getStart());
+            w.varint(node.getEnd() - node.getStart());
+            w.varint(node.getChildren().size());
+            for (int k = 0; k < node.getChildren().size(); k++) {
+                w.varint(node.getChildren().get(k).size());
+                for (SPPF child : node.getChildren().get(k)) {
+                    w.varint(index.get(child));
+                }
+                w.varint(node.getRules().get(k).size());
+                for (Pair<NonTerminal, List<Token>> rule : node.getRules().get(k)) {
+                    w.varint(w.symbol(rule.getLeft().getValue()));
+                    w.varint(rule.getRight().size());
+                    for (Token token : rule.getRight()) {
+                        w.varint(token.getToken().ordinal());
+                        w.varint((token.getValue() == null) ? 0 : w.symbol(token.getValue()) + 1);
+                    }
+                }
+            }
+        }
+        return w.toByteBuffer(SPPF);
+    }
+
+    /**
+     * @param forest Parse Forest
+     * @return encoding of the Parse Forest, which can only be read with a PrunerGenerator of the same automata
+     */
+    public static ByteBuffer write(ParseForest forest) {
+        BinaryWriter w = new BinaryWriter();
+        PrunerGenerator pruner = forest.getPruner();
+        for (int id = 0; id < pruner.size(); id++) {
+            w.symbol(edgeSymbol(pruner.getEdge(id)));
+        }
+        w.varint(forest.size());
+        for (int i = 0; i < forest.size(); i++) {
+            int count = 0;
+            for (int id = forest.next(i, 0); id >= 0; id = forest.next(i, id + 1)) {
+                count++;
+            }
+            w.varint(count);
+            int previous = 0;
+            for (int id = forest.next(i, 0); id >= 0; id = forest.next(i, id + 1)) {
+                w.varint(id - previous);
+                previous = id;
+            }
+        }
+        return w.toByteBuffer(FOREST);
+    }
+
+    /**
+     * @return symbol of a ParseTreeEdge in the symbol table of a Parse Forest, colored edges are marked with a *
+     */
+    static String edgeSymbol(ParseTreeEdge edge) {
+        return edge.isColored() ? edge + "*" : edge.toString();
+    }
+
+    /**
+     * @return index of a symbol in the symbol table, adding it if it is not present yet
+     */
+    private int symbol(String s) {
+        Integer id = symbolids.get(s);
+        if (id == null) {
+            id = symbols.size();
+            symbols.add(s);
+            symbolids.put(s, id);
+        }
+        return id;
+    }
+
+    private void varint(int v) {
+        if (size + 5 > body.length) {
+            body = Arrays.copyOf(body, body.length * 2);
+        }
+        while ((v & ~0x7F) != 0) {
+            body[size++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        body[size++] = (byte) v;
+    }
+
+    /**
+     * Writes the kind and the symbol table in front of the body
+     */
+    private ByteBuffer toByteBuffer(byte kind) {
+        List<byte[]> encoded = new ArrayList<>(symbols.size());
+        int length = 1 + 5 + size;
+        for (String s : symbols) {
+            byte[] b = s.getBytes(StandardCharsets.UTF_8);
+            encoded.add(b);
+            length += 5 + b.length;
+        }
+        ByteBuffer res = ByteBuffer.allocate(length);
+        res.put(kind);
+        putVarint(res, symbols.size());
+        for (byte[] b : encoded) {
+            putVarint(res, b.length);
+            res.put(b);
+        }
+        res.put(body, 0, size);
+        res.flip();
+        return res;
+    }
+
+    private static void putVarint(ByteBuffer buffer, int v) {
+        while ((v & ~0x7F) != 0) {
+            buffer.put((byte) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        buffer.put((byte) v);
+    }
+}
@@ -0,0 +1,42 @@
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Thrown when a parse exceeds its ParseOptions. If the budget is exceeded while extracting the derivations,
+ * the ASTs which are built until then are available as partial result.
+ */
+public class BudgetExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        DERIVATIONS, FOREST_EDGES, DEADLINE, CANCELLED
+    }
+
+    private final Reason reason;
+    private final Set<AST> partialResult;
+
+    BudgetExceededException(Reason reason) {
+        this(reason, Collections.emptySet());
+    }
+
+    BudgetExceededException(Reason reason, Set<AST> partialResult) {
+        super("Parse exceeded its budget: " + reason);
+        this.reason = reason;
+        this.partialResult = partialResult;
+    }
+
+    /**
+     * @return which limit is exceeded
+     */
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * @return ASTs built before the budget was exceeded, empty if it was exceeded before the derivations were extracted
+     */
+    public Set<AST> getPartialResult() {
+        return partialResult;
+    }
+}
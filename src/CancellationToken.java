@@ -0,0 +1,16 @@
+/**
+ * Stops running parses from another thread, see ParseOptions.cancellation.
+ * Parses check the token regularly, so they stop shortly after it is cancelled. A cancelled token stays cancelled.
+ */
+public class CancellationToken {
+
+    private volatile boolean cancelled = false;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
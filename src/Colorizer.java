@@ -9,6 +9,7 @@ public class Colorizer {
 
     private final TreeSet<Transition> T;
     private final Map<String, String> opentoclose;
+    private final State s0;
 
     public Colorizer(Generator g) {
         this.rules = g.getRules();
@@ -17,6 +18,7 @@ public class Colorizer {
         }
         this.opentoclose = g.getOpentoclose();
         this.T = g.getT();
+        this.s0 = g.getS0();
         colors = new HashMap<>();
 
         determineColors();
@@ -30,7 +32,16 @@ public class Colorizer {
      * @return All colored edges for this grammar
      */
     public Set<ColoredEdge> getColoredEdges() {
-        return colorEdges();
+        ParseEvents.Colorize event = new ParseEvents.Colorize();
+        event.begin();
+        Set<ColoredEdge> res = colorEdges();
+        if (event.shouldCommit()) {
+            event.grammarId = ParseEvents.grammarId(s0);
+            event.colors = colors.size();
+            event.coloredEdges = res.size();
+            event.commit();
+        }
+        return res;
     }
 
     /**
@@ -0,0 +1,238 @@
+import java.util.*;
+
+/**
+ * AST stored in parallel int arrays instead of an object per node.
+ * Every node has a symbol id, its first child, its next sibling and the offset in the input of its first symbol.
+ * Nodes are stored in pre-order, with the root at index 0. Terminals are the nodes without children. Missing nodes are -1.
+ * The tree is read-only; it is traversed with the node indices (cursor) or with a Visitor.
+ * Only the AST of a deterministic automata is built directly in the arrays (see Automata.parseCompact).
+ * The ASTs of the other parse methods, e.g. from the SPPF or the traces of an ambiguous parse, are built as ASTs first
+ * and converted with of, so the object nodes are still allocated.
+ */
+public class CompactAST {
+
+    private final List<String> symbols = new ArrayList<>();
+    private final Map<String, Integer> symbolids = new HashMap<>();
+    private int[] symbol;
+    private int[] firstChild;
+    private int[] nextSibling;
+    private int[] offset;
+    //last child of every node, only needed while building
+    private int[] lastChild;
+    private int size = 0;
+
+    /**
+     * Visitor for a depth-first traversal
+     */
+    public interface Visitor {
+
+        /**
+         * Called before the children of a node are visited
+         * @param node index of the node
+         */
+        void enter(int node);
+
+        /**
+         * Called after the children of a node are visited
+         * @param node index of the node
+         */
+        void exit(int node);
+    }
+
+    CompactAST(int capacity) {
+        capacity = Math.max(1, capacity);
+        symbol = new int[capacity];
+        firstChild = new int[capacity];
+        nextSibling = new int[capacity];
+        offset = new int[capacity];
+        lastChild = new int[capacity];
+    }
+
+    /**
+     * Appends a node as last child of its parent. Nodes need to be added in pre-order.
+     * @param value symbol of the node
+     * @param parent index of the parent, or -1 for the root
+     * @param position offset in the input of the first symbol of the node
+     * @return index of the new node
+     */
+    int add(String value, int parent, int position) {
+        if (size == symbol.length) {
+            int capacity = size * 2;
+            symbol = Arrays.copyOf(symbol, capacity);
+            firstChild = Arrays.copyOf(firstChild, capacity);
+            nextSibling = Arrays.copyOf(nextSibling, capacity);
+            offset = Arrays.copyOf(offset, capacity);
+            lastChild = Arrays.copyOf(lastChild, capacity);
+        }
+        Integer id = symbolids.get(value);
+        if (id == null) {
+            id = symbols.size();
+            symbols.add(value);
+            symbolids.put(value, id);
+        }
+        int node = size++;
+        symbol[node] = id;
+        firstChild[node] = -1;
+        nextSibling[node] = -1;
+        lastChild[node] = -1;
+        offset[node] = position;
+        if (parent >= 0) {
+            if (lastChild[parent] < 0) {
+                firstChild[parent] = node;
+            } else {
+                nextSibling[lastChild[parent]] = node;
+            }
+            lastChild[parent] = node;
+        }
+        return node;
+    }
+
+    /**
+     * Releases the unused capacity and the data only needed while building
+     */
+    void trim() {
+        symbol = Arrays.copyOf(symbol, size);
+        firstChild = Arrays.copyOf(firstChild, size);
+        nextSibling = Arrays.copyOf(nextSibling, size);
+        offset = Arrays.copyOf(offset, size);
+        lastChild = null;
+    }
+
+    /**
+     * Converts a legacy AST. Offsets are the positions of the terminals in walkTerminals.
+     * @param ast AST
+     * @return compact AST
+     */
+    public static CompactAST of(AST ast) {
+        CompactAST res = new CompactAST(16);
+        Stack<Pair<AST, Integer>> todo = new Stack<>();
+        todo.push(new Pair<>(ast, -1));
+        int position = 0;
+        while (!todo.isEmpty()) {
+            AST node = todo.peek().getLeft();
+            int index = res.add(node.getValue(), todo.pop().getRight(), position);
+            if (node.getChildren().isEmpty()) {
+                position += node.getValue().length();
+            }
+            for (int i = node.getChildren().size() - 1; i >= 0; i--) {
+                todo.push(new Pair<>(node.getChildren().get(i), index));
+            }
+        }
+        res.trim();
+        return res;
+    }
+
+    /**
+     * Converts to a legacy AST
+     * @return AST
+     */
+    public AST toAST() {
+        if (size == 0) {
+            return null;
+        }
+        AST[] nodes = new AST[size];
+        for (int node = 0; node < size; node++) {
+            nodes[node] = new AST(getSymbol(node));
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                if (nodes[child] == null) nodes[child] = new AST(getSymbol(child));
+            }
+        }
+        for (int node = 0; node < size; node++) {
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                nodes[node].addChild(nodes[child]);
+            }
+        }
+        return nodes[0];
+    }
+
+    /**
+     * Visits all nodes depth-first, with an explicit stack
+     * @param visitor visitor
+     */
+    public void accept(Visitor visitor) {
+        if (size == 0) {
+            return;
+        }
+        int[] stack = new int[16];
+        int top = 0;
+        int node = 0;
+        while (true) {
+            visitor.enter(node);
+            if (firstChild[node] >= 0) {
+                if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                stack[top++] = node;
+                node = firstChild[node];
+                continue;
+            }
+            visitor.exit(node);
+            while (nextSibling[node] < 0) {
+                if (top == 0) return;
+                node = stack[--top];
+                visitor.exit(node);
+            }
+            node = nextSibling[node];
+        }
+    }
+
+    /**
+     * Returns all terminals in correct order. As nodes are stored in pre-order, this is a single loop over the nodes.
+     * @return terminals
+     */
+    public String walkTerminals() {
+        StringBuilder res = new StringBuilder();
+        for (int node = 0; node < size; node++) {
+            if (firstChild[node] < 0) res.append(getSymbol(node));
+        }
+        return res.toString();
+    }
+
+    /**
+     * @return index of the root, or -1 if the tree is empty
+     */
+    public int getRoot() {
+        return (size == 0) ? -1 : 0;
+    }
+
+    /**
+     * @return amount of nodes
+     */
+    public int size() {
+        return size;
+    }
+
+    public String getSymbol(int node) {
+        return symbols.get(symbol[node]);
+    }
+
+    public int getSymbolId(int node) {
+        return symbol[node];
+    }
+
+    public int getFirstChild(int node) {
+        return firstChild[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public int getOffset(int node) {
+        return offset[node];
+    }
+
+    public boolean isTerminal(int node) {
+        return firstChild[node] < 0;
+    }
+
+    /**
+     * @return symbol table, the symbol id of a node is its index in this list
+     */
+    public List<String> getSymbols() {
+        return Collections.unmodifiableList(symbols);
+    }
+
+    @Override
+    public String toString() {
+        return (size == 0) ? "" : toAST().toString();
+    }
+}
@@ -0,0 +1,57 @@
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Builds a CompactAST from a trace, one ParseTreeEdge at a time. Same approach as ASTBuilder,
+ * but the stacks hold node indices in arrays.
+ */
+class CompactASTBuilder {
+
+    private final Map<String, String> opentoclose;
+    private final CompactAST res;
+    //Pairs of the open nestings and the nodes of their calls
+    private Object[] s = new Object[16];
+    private int[] sreturn = new int[16];
+    private int top = 0;
+    private int currentast = -1;
+
+    CompactASTBuilder(Map<String, String> opentoclose, int capacity) {
+        this.opentoclose = opentoclose;
+        this.res = new CompactAST(capacity);
+    }
+
+    /**
+     * Adds the next edge of the trace
+     * @param edge next ParseTreeEdge
+     * @param position offset in the input of the symbol consumed by the edge
+     */
+    void add(ParseTreeEdge edge, int position) {
+        if (opentoclose.containsValue(edge.getC()) && top > 0 && s[top - 1].equals(edge.getO())) {
+            currentast = sreturn[--top];
+            s[top] = null;
+            if (!edge.isColored()) res.add(edge.getC(), currentast, position);
+            return;
+        }
+
+        int ast = res.add(edge.getO().toString(), currentast, position);
+        if (!edge.isColored()) res.add(edge.getC(), ast, position);
+
+        if (opentoclose.containsKey(edge.getC())) {
+            if (top == s.length) {
+                s = Arrays.copyOf(s, top * 2);
+                sreturn = Arrays.copyOf(sreturn, top * 2);
+            }
+            s[top] = new Pair<>((NonTerminal) edge.getO(), edge.getD());
+            sreturn[top++] = ast;
+        }
+        currentast = ast;
+    }
+
+    /**
+     * @return CompactAST of all added edges
+     */
+    CompactAST getResult() {
+        res.trim();
+        return res;
+    }
+}
@@ -14,16 +14,22 @@ public class Generator {
 
     private final Map<NonTerminal, Set<List<Token>>> rules;
     private final Map<String, String> opentoclose;
+    private final Map<NonTerminal, Map<List<Token>, Double>> weights;
+    private final Map<NonTerminal, Map<List<Token>, Integer>> priorities;
 
     private final State s0;
     private TreeSet<State> A;
     private TreeSet<Transition> T;
+    //All States returned by checkState, mapped to themselves
+    private final TreeMap<State, State> states = new TreeMap<>();
 
     /**
      * Constructor of the class and automatically generates the automata
      * @param grammar
      */
     public Generator(String grammar) {
+        ParseEvents.Generate event = new ParseEvents.Generate();
+        event.begin();
 
         GrammarTokenizer gt = new GrammarTokenizer();
         rules = gt.tokenize(grammar);
@@ -32,6 +38,8 @@ public class Generator {
         Set<String> ec = gt.getEc();
         Set<String> er = gt.getEr();
         opentoclose = gt.getOpentoclose();
+        weights = gt.getWeights();
+        priorities = gt.getPriorities();
 
         for (NonTerminal nt : rules.keySet()) {
             if (hasEpsilon(nt)) {
@@ -41,6 +49,7 @@ public class Generator {
 
         s0 = new State();
         s0.addPair(start, start);
+        states.put(s0, s0);
 
         TreeSet<State> n = new TreeSet<>();
         n.add(s0);
@@ -51,7 +60,12 @@ public class Generator {
         T = new TreeSet<>();
 
         //The lines correspond to the lines of the pseudo-code algorithm of Jia et al. on page 7.
+        int round = 0;
         while (!n.isEmpty()) {
+            ParseEvents.GenerateRound roundevent = new ParseEvents.GenerateRound();
+            roundevent.begin();
+            int frontier = n.size();
+            int transitions = T.size();
 
             //Line 7 + 8
             TreeSet<State> Nprime = new TreeSet<>();
@@ -102,6 +116,16 @@ public class Generator {
 
             //Line 13
             A.addAll(n);
+
+            if (roundevent.shouldCommit()) {
+                roundevent.grammarHash = grammar.hashCode();
+                roundevent.round = round;
+                roundevent.frontier = frontier;
+                roundevent.newStates = n.size();
+                roundevent.newTransitions = T.size() - transitions;
+                roundevent.commit();
+            }
+            round++;
         }
 
         for (State a : A) {
@@ -110,8 +134,15 @@ public class Generator {
             }
         }
 
-
-
+        if (event.shouldCommit()) {
+            event.grammarId = ParseEvents.grammarId(s0);
+            event.grammarHash = grammar.hashCode();
+            event.rules = rules.size();
+            event.states = A.size();
+            event.transitions = T.size();
+            event.rounds = round;
+            event.commit();
+        }
     }
 
     /**
@@ -206,22 +237,13 @@ public class Generator {
 
     /**
      * Checks if an equal State already exists. If so, it will return the existing State. If not, it will return the parameter State.
+     * Every returned State is the destination of a new transition, so the States are looked up in a sorted map instead of scanning all transitions.
      * @param s1 state
      * @return equal state
      */
     public State checkState(State s1) {
-        if (s1.equals(s0)) {
-            return s0;
-        }
-        for (Transition t : T) {
-            if (s1.equals(t.getOrigin())) {
-                return t.getOrigin();
-            }
-            if (s1.equals(t.getDestination())) {
-                return t.getDestination();
-            }
-        }
-        return s1;
+        State existing = states.putIfAbsent(s1, s1);
+        return (existing == null) ? s1 : existing;
     }
 
     /**
@@ -290,4 +312,18 @@ public class Generator {
     public Map<NonTerminal, Set<List<Token>>> getRules() {
         return rules;
     }
-}
\ No newline at end of file
+
+    /**
+     * @return Map with the weights of the rules which have a weight in the grammar
+     */
+    public Map<NonTerminal, Map<List<Token>, Double>> getWeights() {
+        return weights;
+    }
+
+    /**
+     * @return Map with the priorities of the rules which have a priority in the grammar
+     */
+    public Map<NonTerminal, Map<List<Token>, Integer>> getPriorities() {
+        return priorities;
+    }
+}
@@ -17,6 +17,8 @@ public class GrammarTokenizer {
     private Set<String> Ec;
     private Set<String> Er;
     private Map<String, String> opentoclose;
+    private Map<NonTerminal, Map<List<Token>, Double>> weights;
+    private Map<NonTerminal, Map<List<Token>, Integer>> priorities;
 
     /**
      * Tokenizes the grammar by creating the following objects:
@@ -26,6 +28,8 @@ public class GrammarTokenizer {
      *      - Ec: Alphabet of call symbols.
      *      - Er: Alphabet of return symbols.
      *      - opentoclose: Map from start-nesting symbol to its correspond close-nesting symbol.
+     *      - weights: Maps NonTerminal Tokens to the weights of their rules. A weight is written as {0.5} at the end of a rule.
+     *      - priorities: Maps NonTerminal Tokens to the priorities of their rules. A priority is written as {priority 1} at the end of a rule.
      * @param grammar String representation of a grammar.
      * @return rules
      */
@@ -39,6 +43,8 @@ public class GrammarTokenizer {
         Ec = new HashSet<>();
         Er = new HashSet<>();
         opentoclose = new HashMap<>();
+        weights = new HashMap<>();
+        priorities = new HashMap<>();
 
         while (it.current() != CharacterIterator.DONE) {
             //left
@@ -107,6 +113,20 @@ public class GrammarTokenizer {
                         skipwhitespaces();
                         currentrule.add(new Token(TokenType.Star));
                         break;
+                    case '{':
+                        int position = it.getIndex();
+                        String annotation = annotation();
+                        skipwhitespaces();
+                        //The rule is used as a key, so it may not change after its annotation
+                        if (it.current() != '|' && it.current() != ';') {
+                            throw new IllegalArgumentException("Annotation at position " + position + " is not at the end of the rule " + nonterm + " : " + currentrule);
+                        }
+                        if (annotation.startsWith("priority")) {
+                            priorities.computeIfAbsent(nonterm, k -> new HashMap<>()).put(currentrule, priority(annotation, nonterm, currentrule));
+                        } else {
+                            weights.computeIfAbsent(nonterm, k -> new HashMap<>()).put(currentrule, weight(annotation, nonterm, currentrule));
+                        }
+                        break;
                     case '|':
                         it.next();
                         skipwhitespaces();
@@ -165,6 +185,59 @@ public class GrammarTokenizer {
         return res.toString();
     }
 
+    /**
+     * Consumes an annotation of a rule, a weight or a priority
+     * @return content of the annotation
+     * @throws IllegalArgumentException if the annotation is not closed
+     */
+    public String annotation() {
+        int position = it.getIndex();
+        StringBuilder res = new StringBuilder();
+        while (it.next() != '}') {
+            if (it.current() == CharacterIterator.DONE) {
+                throw new IllegalArgumentException("Annotation at position " + position + " is not closed");
+            }
+            res.append(it.current());
+        }
+        it.next();
+        return res.toString().trim();
+    }
+
+    /**
+     * @param annotation content of the annotation of a rule
+     * @param nonterm NonTerminal of the rule
+     * @param rule rule
+     * @return weight of the rule
+     * @throws IllegalArgumentException if the annotation is not a number
+     */
+    private double weight(String annotation, NonTerminal nonterm, List<Token> rule) {
+        try {
+            return Double.parseDouble(annotation);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid weight {" + annotation + "} of the rule " + nonterm + " : " + rule, e);
+        }
+    }
+
+    /**
+     * @param annotation content of the annotation of a rule, starting with "priority"
+     * @param nonterm NonTerminal of the rule
+     * @param rule rule
+     * @return priority of the rule
+     * @throws IllegalArgumentException if the priority is not a non-negative integer
+     */
+    private int priority(String annotation, NonTerminal nonterm, List<Token> rule) {
+        int priority;
+        try {
+            priority = Integer.parseInt(annotation.substring("priority".length()).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid priority {" + annotation + "} of the rule " + nonterm + " : " + rule, e);
+        }
+        if (priority < 0) {
+            throw new IllegalArgumentException("Negative priority {" + annotation + "} of the rule " + nonterm + " : " + rule);
+        }
+        return priority;
+    }
+
     /**
      * Consumes all coming whitespaces
      */
@@ -193,4 +266,12 @@ public class GrammarTokenizer {
     public Map<String, String> getOpentoclose() {
         return opentoclose;
     }
+
+    public Map<NonTerminal, Map<List<Token>, Double>> getWeights() {
+        return weights;
+    }
+
+    public Map<NonTerminal, Map<List<Token>, Integer>> getPriorities() {
+        return priorities;
+    }
 }
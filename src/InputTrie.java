@@ -0,0 +1,93 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Trie of a list of inputs, see Automata.recognizeTrie. Every node is a distinct prefix of the inputs, node 0 is the empty prefix.
+ * The nodes are stored in arrays instead of an object per node: the children of a node are a linked list of siblings,
+ * and the inputs which end at a node are a linked list of their indices.
+ */
+class InputTrie {
+
+    private int size = 1;
+    private char[] label = new char[16];
+    private int[] firstChild = new int[16];
+    private int[] nextSibling = new int[16];
+    private int[] firstInput = new int[16];
+    private final int[] nextInput;
+
+    /**
+     * @param inputs inputs, of which input i is stored with index i
+     */
+    InputTrie(List<? extends CharSequence> inputs) {
+        firstChild[0] = -1;
+        nextSibling[0] = -1;
+        firstInput[0] = -1;
+        nextInput = new int[inputs.size()];
+        for (int i = 0; i < inputs.size(); i++) {
+            CharSequence input = inputs.get(i);
+            int node = 0;
+            for (int k = 0; k < input.length(); k++) {
+                node = child(node, input.charAt(k));
+            }
+            nextInput[i] = firstInput[node];
+            firstInput[node] = i;
+        }
+    }
+
+    /**
+     * @return the child of a node with the given label, which is created if it does not exist yet
+     */
+    private int child(int node, char c) {
+        for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+            if (label[child] == c) return child;
+        }
+        if (size == label.length) {
+            label = Arrays.copyOf(label, size * 2);
+            firstChild = Arrays.copyOf(firstChild, size * 2);
+            nextSibling = Arrays.copyOf(nextSibling, size * 2);
+            firstInput = Arrays.copyOf(firstInput, size * 2);
+        }
+        label[size] = c;
+        firstChild[size] = -1;
+        nextSibling[size] = firstChild[node];
+        firstInput[size] = -1;
+        firstChild[node] = size;
+        return size++;
+    }
+
+    /**
+     * @return amount of nodes, which is the amount of distinct prefixes including the empty prefix
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return last character of the prefix of a node
+     */
+    char label(int node) {
+        return label[node];
+    }
+
+    /**
+     * Iterates the children of a node: for (int child = firstChild(node); child >= 0; child = nextSibling(child))
+     */
+    int firstChild(int node) {
+        return firstChild[node];
+    }
+
+    int nextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    /**
+     * Iterates the inputs which are equal to the prefix of a node: for (int i = firstInput(node); i >= 0; i = nextInput(i))
+     */
+    int firstInput(int node) {
+        return firstInput[node];
+    }
+
+    int nextInput(int input) {
+        return nextInput[input];
+    }
+}
@@ -0,0 +1,130 @@
+import org.junit.Test;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * This class guards the memory allocated by every phase of parsing for the workloads of JUnitPerformanceTest (see Workload).
+ * The allocated bytes are measured with ThreadMXBean.getThreadAllocatedBytes, and divided by the amount of symbols the phase handles:
+ * the length of the grammar for tokenize, generator and colorizer, the length of the input for recognize, prune and extract.
+ * A test fails when a phase allocates more bytes per symbol than its baseline in allocation-baseline.properties allows.
+ *
+ * After an intended change the baseline is updated with: java JUnitAllocationTest src/allocation-baseline.properties
+ */
+public class JUnitAllocationTest {
+
+    static final String[] WORKLOADS = {"longInput-1600", "deepGrammar-400", "deepNesting-20", "combined-200",
+            "longAmbiguity-12", "broadAmbiguity-3", "generated-20000"};
+    static final String[] PHASES = {"tokenize", "generator", "colorizer", "recognize", "prune", "extract"};
+
+    //Allowed relative growth of the allocation per symbol compared to the baseline
+    static final double TOLERANCE = 0.2;
+    //Allowed absolute growth, so that phases which allocate almost nothing do not fail on small differences
+    static final double SLACK = 16;
+    //Amount of measured runs of every workload
+    static final int RUNS = 5;
+
+    @Test
+    public void testAllocation() throws IOException {
+        assertTrue(Allocation.isSupported());
+        Properties baseline = new Properties();
+        try (InputStream in = JUnitAllocationTest.class.getResourceAsStream("allocation-baseline.properties")) {
+            assertNotNull(in, "allocation-baseline.properties is missing");
+            baseline.load(in);
+        }
+        List<String> regressions = new ArrayList<>();
+        for (String workload : WORKLOADS) {
+            Map<String, Double> measured = measure(Workload.of(workload));
+            for (String phase : PHASES) {
+                String key = phase + "." + workload;
+                assertNotNull(baseline.getProperty(key), "No baseline for " + key);
+                double allowed = Double.parseDouble(baseline.getProperty(key)) * (1 + TOLERANCE) + SLACK;
+                System.out.printf("%-10s %-20s %12.1f bytes/symbol (baseline %s)%n", phase, workload, measured.get(phase), baseline.getProperty(key));
+                if (measured.get(phase) > allowed) {
+                    regressions.add(String.format("%s: %.1f bytes/symbol, allowed %.1f", key, measured.get(phase), allowed));
+                }
+            }
+        }
+        assertTrue(regressions.isEmpty(), "Allocation regressions:\n" + String.join("\n", regressions));
+    }
+
+    /**
+     * Runs every phase of a workload several times and keeps the smallest allocation of every phase,
+     * so that class loading, lazy initialization and allocations before the JIT removes them are not measured
+     * @param workload workload
+     * @return Map from phase to the bytes it allocated per symbol
+     */
+    public static Map<String, Double> measure(Workload workload) {
+        Map<String, Double> res = run(workload);
+        for (int i = 0; i < RUNS; i++) {
+            run(workload).forEach((phase, bytes) -> res.merge(phase, bytes, Math::min));
+        }
+        return res;
+    }
+
+    private static Map<String, Double> run(Workload workload) {
+        String grammar = workload.getGrammar();
+        String input = workload.getInput();
+        int grammarsymbols = Math.max(1, grammar.length());
+        int inputsymbols = Math.max(1, input.length());
+        Map<String, Double> res = new HashMap<>();
+
+        long before = Allocation.allocated();
+        new GrammarTokenizer().tokenize(grammar);
+        res.put("tokenize", (double) (Allocation.allocated() - before) / grammarsymbols);
+
+        before = Allocation.allocated();
+        Generator g = new Generator(grammar);
+        res.put("generator", (double) (Allocation.allocated() - before) / grammarsymbols);
+
+        before = Allocation.allocated();
+        Colorizer c = new Colorizer(g);
+        res.put("colorizer", (double) (Allocation.allocated() - before) / grammarsymbols);
+
+        Automata automata = new Automata(g.getA(), g.getT(), g.getS0(), g.getOpentoclose(), c.getColors(), c.getColoredEdges());
+        before = Allocation.allocated();
+        ParseForest forest = new ParseForest(automata.getPruner(), input.length());
+        assertTrue(automata.recognize(input, forest));
+        res.put("recognize", (double) (Allocation.allocated() - before) / inputsymbols);
+
+        before = Allocation.allocated();
+        automata.getPruner().prune(forest);
+        res.put("prune", (double) (Allocation.allocated() - before) / inputsymbols);
+
+        before = Allocation.allocated();
+        if (forest.size() > 0) {
+            List<Set<ParseTreeEdge>> l = forest.toList();
+            for (ParseTreeEdge start : l.get(0)) {
+                for (List<ParseTreeEdge> trace : automata.puretrace(start, l)) {
+                    automata.buildAST(trace);
+                }
+            }
+        }
+        res.put("extract", (double) (Allocation.allocated() - before) / inputsymbols);
+        return res;
+    }
+
+    /**
+     * Measures all workloads and writes them as the new baseline
+     * @param args path of the baseline file
+     */
+    public static void main(String[] args) throws IOException {
+        //Sorted, so that changes of the baseline are readable in a diff
+        Map<String, String> baseline = new TreeMap<>();
+        for (String workload : WORKLOADS) {
+            Map<String, Double> measured = measure(Workload.of(workload));
+            for (String phase : PHASES) {
+                baseline.put(phase + "." + workload, String.format(Locale.ROOT, "%.1f", measured.get(phase)));
+            }
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(args[0]), StandardCharsets.UTF_8)) {
+            out.write("# Bytes allocated per symbol, see JUnitAllocationTest\n");
+            for (Map.Entry<String, String> entry : baseline.entrySet()) {
+                out.write(entry.getKey() + "=" + entry.getValue() + "\n");
+            }
+        }
+    }
+}
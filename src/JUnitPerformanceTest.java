@@ -1,5 +1,8 @@
 import org.junit.Test;
 
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -15,6 +18,9 @@ import static org.junit.jupiter.api.Assertions.*;
  */
 public class JUnitPerformanceTest {
 
+    //Seeded, so that every run measures the same generated grammars
+    private final Random random = new Random(0);
+
     @Test
     public void testLongInput() {
 
@@ -134,56 +140,7 @@ public class JUnitPerformanceTest {
     }
 
     public Pair<String, String> createCombinedGrammar(int minimum, int maximum) {
-        int length = minimum / 10;
-
-        StringBuilder grammar = new StringBuilder();
-        StringBuilder input = new StringBuilder();
-        Stack<Integer> nestinglocation = new Stack<>();
-        Stack<String> closingsymbol = new Stack<>();
-        for (int i = 0; i < length || !nestinglocation.isEmpty(); i++) {
-
-            if (i > maximum) {
-                return createCombinedGrammar(minimum, maximum);
-            }
-
-            int random = (nestinglocation.isEmpty()) ? (int) (Math.random() * 3) : (int) (Math.random() * 4);
-
-            //Regular rule
-            if (random == 0 || random == 1) {
-                grammar.append("RULE").append(i).append(" : ").append("\"a\" RULE").append(i+1).append(";\n");
-
-                if (i >= length - 1 && nestinglocation.isEmpty()) {
-                    grammar.append("RULE").append(i+1).append(" : e;\n");
-                }
-
-                input.append("a");
-
-                //Opening rule
-            } else if (random == 2) {
-                grammar.append("RULE").append(i).append(" : ").append("[ \"[\" RULE").append(i+1).append(" \"]\" ] RULE");
-                nestinglocation.push(grammar.length());
-
-                input.append("[");
-                closingsymbol.push("]");
-
-            } else if (random == 3) {
-                grammar.append("RULE").append(i).append(" : e;\n");
-                grammar.insert(nestinglocation.pop(), i+1 + " ;\n");
-
-                if (i >= length - 1 && nestinglocation.isEmpty()) {
-                    grammar.append("RULE").append(i+1).append(" : e;\n");
-                }
-
-                input.append(closingsymbol.pop());
-            }
-        }
-        int grammarsize = grammar.toString().split("\n").length;
-        if (grammarsize >= minimum && grammarsize <= maximum) {
-            return new Pair<>(grammar.toString(), input.toString());
-        } else {
-            return createCombinedGrammar(minimum, maximum);
-        }
-
+        return WorkloadGenerator.combined(random, minimum, maximum);
     }
 
     @Test
@@ -265,6 +222,71 @@ public class JUnitPerformanceTest {
         return res;
     }
 
+    @Test
+    public void testSerialization() throws IOException, ClassNotFoundException {
+
+        String grammar ="L : [ \"[\" L \"]\" ] K\n" +
+                        "  | \"a\" K\n" +
+                        "  | e;\n" +
+
+                        "K : \",\" L\n" +
+                        "  | e;";
+
+        Automata automata = getAutomata(grammar);
+        //Left is the amount of elements, right the size in bytes or the time in ms for 100 encodings and decodings
+        List<Pair<Integer, Integer>> binarysize = new ArrayList<>(), javasize = new ArrayList<>(), textsize = new ArrayList<>();
+        List<Pair<Integer, Integer>> binarytime = new ArrayList<>(), javatime = new ArrayList<>(), texttime = new ArrayList<>();
+
+        //Java serialization is recursive, so the input is kept below its stack limit
+        for (int i = 50; i <= 400; i = i + 50) {
+            String input = repeat("[a,a],", i) + "a";
+            AST ast = automata.parseDeterministic(input);
+
+            long startTime = System.nanoTime();
+            ByteBuffer buffer = null;
+            for (int k = 0; k < 100; k++) {
+                buffer = BinaryWriter.write(ast);
+                assertEquals(input, new BinaryReader(buffer).readAST().walkTerminals());
+            }
+            binarytime.add(new Pair<>(i, (int) ((System.nanoTime() - startTime) / 1000000)));
+            binarysize.add(new Pair<>(i, buffer.limit()));
+
+            startTime = System.nanoTime();
+            byte[] bytes = null;
+            for (int k = 0; k < 100; k++) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (ObjectOutputStream o = new ObjectOutputStream(out)) {
+                    o.writeObject(ast);
+                }
+                bytes = out.toByteArray();
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    assertEquals(input, ((AST) in.readObject()).walkTerminals());
+                }
+            }
+            javatime.add(new Pair<>(i, (int) ((System.nanoTime() - startTime) / 1000000)));
+            javasize.add(new Pair<>(i, bytes.length));
+
+            //The text form has no reader, so only writing it is measured
+            startTime = System.nanoTime();
+            byte[] text = null;
+            for (int k = 0; k < 100; k++) {
+                text = ast.toString().getBytes(StandardCharsets.UTF_8);
+            }
+            texttime.add(new Pair<>(i, (int) ((System.nanoTime() - startTime) / 1000000)));
+            textsize.add(new Pair<>(i, text.length));
+        }
+        System.out.println("size binary: " + coordinatestostring(binarysize));
+        System.out.println("size java: " + coordinatestostring(javasize));
+        System.out.println("size text: " + coordinatestostring(textsize));
+        System.out.println("time binary: " + coordinatestostring(binarytime));
+        System.out.println("time java: " + coordinatestostring(javatime));
+        System.out.println("time text: " + coordinatestostring(texttime));
+        for (int k = 0; k < binarysize.size(); k++) {
+            assertTrue(binarysize.get(k).getRight() < javasize.get(k).getRight());
+            assertTrue(binarysize.get(k).getRight() < textsize.get(k).getRight());
+        }
+    }
+
     public List<Pair<Integer, Integer>> average(Set<List<Pair<Integer, Integer>>> s) {
         List<Pair<Integer, Integer>> res = new ArrayList<>();
         for (List<Pair<Integer, Integer>> l : s) {
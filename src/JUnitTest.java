@@ -1,6 +1,22 @@
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -198,10 +214,1264 @@ public class JUnitTest {
 
     }
 
+    @Test
+    public void testPruneNesting() {
+
+        String grammar ="S : [ \"[\" A \"]\" ] S\n" +
+                        "  | e;\n" +
+
+                        "A : \"a\" A\n" +
+                        "  | \"a\" B\n" +
+                        "  | e;\n" +
+
+                        "B : \"a\" A\n" +
+                        "  | \"b\" C;\n" +
+
+                        "C : \"c\" A;";
+
+        Automata automata = getAutomata(grammar);
+
+        //The edges to A after the first "a" can not be continued by "b", so only the edge to B remains
+        assertEquals(1, automata.parse("[abca]").size());
+        assertEquals(1, automata.parse("[abca][abca]").size());
+        assertTrue(checkParseTrees("[aa][abca][]", automata));
+    }
+
+    @Test
+    public void testLongPrune() {
+
+        String grammar ="S : \"a\" S\n" +
+                        "  | e;";
+
+        Automata automata = getAutomata(grammar);
+
+        //Recognizing and pruning are iterative, so the length of the input is not bounded by the Java stack
+        ParseForest forest = automata.parseForest("a".repeat(10000000));
+        assertEquals(10000000, forest.size());
+        assertEquals(10000000, forest.edgeCount());
+
+        assertNull(automata.parseForest("a".repeat(10000000) + "b"));
+    }
+
+    @Test
+    public void testSPPF() {
+
+        String grammar ="S : \"a\" S\n" +
+                        "  | \"a\" A\n" +
+                        "  | e;\n" +
+
+                        "A : \"a\" S\n" +
+                        "  | \"a\" A\n" +
+                        "  | e;\n";
+
+        Automata automata = getAutomata(grammar);
+
+        //For every a the amount of possible parse trees doubles
+        for (int i = 1; i < 10; i++) {
+            SPPF sppf = automata.parseSPPF("a".repeat(i));
+            assertEquals("a".repeat(i), sppf.walkTerminals());
+            List<AST> trees = new ArrayList<>();
+            automata.parseLazily("a".repeat(i)).forEachRemaining(trees::add);
+            assertEquals(BigInteger.valueOf(trees.size()), countTrees(sppf, new HashMap<>()));
+            //Derivations which only differ in the NonTerminal deriving epsilon at the end have the same AST
+            assertEquals(new HashSet<>(trees), automata.parse("a".repeat(i)));
+        }
+
+        //2^100 derivations are shared in at most 2 NonTerminal nodes and 1 terminal node per position
+        SPPF sppf = automata.parseSPPF("a".repeat(100));
+        assertEquals(BigInteger.TWO.pow(100), countTrees(sppf, new HashMap<>()));
+        assertTrue(countNodes(sppf) <= 3 * 100);
+
+        automata = getAutomata("S : [ \"[\" A \"]\" ] S\n" +
+                                "  | e;\n" +
+                                "A : \"a\" A\n" +
+                                "  | \"a\" B\n" +
+                                "  | e;\n" +
+                                "B : \"a\" A\n" +
+                                "  | e;");
+
+        //Inside every nesting "aa" can be derived by AAA, AAB and ABA
+        assertEquals(BigInteger.valueOf(3), countTrees(automata.parseSPPF("[aa]"), new HashMap<>()));
+        assertEquals(BigInteger.valueOf(9), countTrees(automata.parseSPPF("[aa][aa]"), new HashMap<>()));
+        assertEquals("[aa][][aa]", automata.parseSPPF("[aa][][aa]").walkTerminals());
+
+        automata = getAutomata("S : [ \"[\" A \"]\" ] S\n" +
+                                "  | e ;\n" +
+                                "A : [ \"{\" B \"}\" ] A\n" +
+                                "  | e ;\n" +
+                                "B : [ \"(\" C \")\" ] B\n" +
+                                "  | e ;\n" +
+                                "C : \"c\" C\n" +
+                                "  | e ;");
+
+        //Symbols of pending calls which are closed by a colored edge are not part of the SPPF
+        assertEquals("[{(ccc][{(ccc]", automata.parseSPPF("[{(ccc][{(ccc]").walkTerminals());
+    }
+
+    @Test
+    public void testParseLazily() {
+
+        String grammar ="S : \"a\" A\n" +
+                        "  | \"a\" B\n" +
+                        "  | e;\n" +
+
+                        "A : \"a\" S\n" +
+                        "  | e;\n" +
+
+                        "B : \"a\" S\n" +
+                        "  | e;";
+
+        Automata automata = getAutomata(grammar);
+
+        //The lazily built ASTs are the same as the ASTs of parse
+        Set<String> expected = new HashSet<>();
+        for (AST ast : automata.parse("aaaaaaaaaaaa")) {
+            expected.add(ast.toString());
+        }
+        Set<String> actual = new HashSet<>();
+        Iterator<AST> it = automata.parseLazily("aaaaaaaaaaaa");
+        while (it.hasNext()) {
+            assertTrue(actual.add(it.next().toString()));
+        }
+        assertEquals(expected, actual);
+
+        assertNull(automata.parseLazily("b"));
+        assertFalse(automata.parseLazily("").hasNext());
+
+        //2^500 derivations, of which only the first ones are built
+        assertEquals(5, automata.parseStream("a".repeat(1000)).limit(5).count());
+        assertTrue(automata.parseStream("a".repeat(1000)).limit(5).allMatch(ast -> ast.walkTerminals().equals("a".repeat(1000))));
+
+        automata = getAutomata("S : [ \"[\" A \"]\" ] S\n" +
+                                "  | e;\n" +
+                                "A : \"a\" A\n" +
+                                "  | \"a\" B\n" +
+                                "  | e;\n" +
+                                "B : \"a\" A\n" +
+                                "  | e;");
+        assertEquals(9, automata.parseStream("[aa][aa]").count());
+    }
+
+    @Test
+    public void testSemiring() {
+
+        String grammar ="S : \"a\" S\n" +
+                        "  | \"a\" A\n" +
+                        "  | e;\n" +
+
+                        "A : \"a\" S\n" +
+                        "  | \"a\" A\n" +
+                        "  | e;\n";
+
+        Automata automata = getAutomata(grammar);
+
+        assertEquals(BigInteger.valueOf(32), automata.countParses("a".repeat(5)));
+        assertEquals(BigInteger.TWO.pow(10000), automata.countParses("a".repeat(10000)));
+        assertEquals(BigInteger.ZERO, automata.countParses("b"));
+
+        grammar ="S : \"a\" S {0.6}\n" +
+                "  | \"a\" A {0.4}\n" +
+                "  | e {0.5};\n" +
+
+                "A : \"a\" S {0.5}\n" +
+                "  | \"a\" A {0.5}\n" +
+                "  | e {1.0};\n";
+
+        Generator g = new Generator(grammar);
+        automata = getAutomata(g);
+
+        //SSS: 0.6 * 0.6 * 0.5, SSA: 0.6 * 0.4 * 1.0, SAS: 0.4 * 0.5 * 0.5, SAA: 0.4 * 0.5 * 1.0
+        assertEquals(0.18 + 0.24 + 0.1 + 0.2, automata.evaluate("aa", Semiring.INSIDE, g.getWeights()), 1e-9);
+        assertEquals(0.24, automata.evaluate("aa", Semiring.VITERBI, g.getWeights()), 1e-9);
+        assertEquals(0.5, automata.evaluate("", Semiring.INSIDE, g.getWeights()), 1e-9);
+        assertEquals(BigInteger.valueOf(4), automata.evaluate("aa", Semiring.COUNTING, g.getWeights()));
+
+        //With negative log probabilities, the cheapest derivation is the most probable derivation
+        Map<NonTerminal, Map<List<Token>, Double>> costs = new HashMap<>();
+        for (NonTerminal nt : g.getWeights().keySet()) {
+            costs.put(nt, new HashMap<>());
+            for (List<Token> rule : g.getWeights().get(nt).keySet()) {
+                costs.get(nt).put(rule, -Math.log(g.getWeights().get(nt).get(rule)));
+            }
+        }
+        assertEquals(-Math.log(0.24), automata.evaluate("aa", Semiring.TROPICAL, costs), 1e-9);
+
+        //A weight is only read at the end of a rule, and one which can not be read is reported
+        assertThrows(IllegalArgumentException.class, () -> new Generator("S : \"a\" S {0.6\n  | e;"));
+        assertThrows(IllegalArgumentException.class, () -> new Generator("S : \"a\" S {x}\n  | e;"));
+        assertThrows(IllegalArgumentException.class, () -> new Generator("S : \"a\" {0.6} S\n  | e;"));
+
+        automata = getAutomata("S : [ \"[\" A \"]\" ] S\n" +
+                                "  | e;\n" +
+                                "A : \"a\" A\n" +
+                                "  | \"a\" B\n" +
+                                "  | e;\n" +
+                                "B : \"a\" A\n" +
+                                "  | e;");
+        assertEquals(BigInteger.valueOf(27), automata.countParses("[aa][aa][aa]"));
+    }
+
+    @Test
+    public void testTopK() {
+
+        String grammar ="S : \"a\" S {0.6}\n" +
+                        "  | \"a\" A {0.4}\n" +
+                        "  | e {0.5};\n" +
+
+                        "A : \"a\" S {0.5}\n" +
+                        "  | \"a\" A {0.5}\n" +
+                        "  | e {1.0};\n";
+
+        Generator g = new Generator(grammar);
+        Automata automata = getAutomata(g);
+
+        //SSA: 0.24, SAA: 0.2, SSS: 0.18, SAS: 0.1 (the last NonTerminal derives epsilon and is not part of the AST)
+        List<AST> top = automata.parseTopK("aa", 3, g.getWeights());
+        assertEquals(3, top.size());
+        assertEquals("S [a] [S [a]]", top.get(0).toString());
+        assertEquals("S [a] [A [a]]", top.get(1).toString());
+        assertEquals("S [a] [S [a]]", top.get(2).toString());
+        assertEquals(4, automata.parseTopK("aa", 10, g.getWeights()).size());
+
+        //The scores are in decreasing order and the first score is the Viterbi score
+        String input = "a".repeat(500);
+        KBestIterator it = new KBestIterator(automata.parseSPPF(input), g.getWeights());
+        double previous = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < 100; i++) {
+            AST ast = it.next();
+            assertEquals(input, ast.walkTerminals());
+            if (i == 0) assertEquals(Math.log(automata.evaluate(input, Semiring.VITERBI, g.getWeights())), it.getScore(), 1e-6);
+            assertTrue(it.getScore() <= previous);
+            previous = it.getScore();
+        }
+
+        //All ASTs are found once
+        List<String> expected = new ArrayList<>();
+        automata.parseLazily("a".repeat(8)).forEachRemaining(ast -> expected.add(ast.toString()));
+        List<String> actual = new ArrayList<>();
+        for (AST ast : automata.parseTopK("a".repeat(8), 1000, g.getWeights())) {
+            actual.add(ast.toString());
+        }
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testSampleParses() {
+
+        String grammar ="S : \"a\" A\n" +
+                        "  | \"a\" B;\n" +
+
+                        "A : \"a\" C\n" +
+                        "  | \"a\" D;\n" +
+
+                        "B : \"a\" E;\n" +
+
+                        "C : \"a\" F;\n" +
+                        "D : \"a\" F;\n" +
+                        "E : \"a\" F;\n" +
+                        "F : e;";
+
+        Automata automata = getAutomata(grammar);
+
+        //Two of the three ASTs start with A, so A is chosen twice as often as B
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (AST ast : automata.sampleParses("aaa", 9000, new Random(42))) {
+            frequencies.merge(ast.toString(), 1, Integer::sum);
+        }
+        assertEquals(3, frequencies.size());
+        for (int frequency : frequencies.values()) {
+            assertTrue(frequency > 2700 && frequency < 3300);
+        }
+
+        assertNull(automata.sampleParses("aa", 1, new Random(42)));
+
+        grammar ="S : \"a\" S\n" +
+                "  | \"a\" A\n" +
+                "  | e;\n" +
+
+                "A : \"a\" S\n" +
+                "  | \"a\" A\n" +
+                "  | e;\n";
+
+        automata = getAutomata(grammar);
+        for (AST ast : automata.sampleParses("a".repeat(2000), 10, new Random(42))) {
+            assertEquals("a".repeat(2000), ast.walkTerminals());
+        }
+    }
+
+    @Test
+    public void testDeterministic() {
+
+        String grammar ="L : [ \"[\" L \"]\" ] K\n" +
+                        "  | \"a\" K\n" +
+                        "  | e;\n" +
+
+                        "K : \",\" L\n" +
+                        "  | e;";
+
+        Automata automata = getAutomata(grammar);
+        assertTrue(automata.isDeterministic());
+
+        //The single pass AST is the same as the AST of the Parse Forest
+        String input = "[[a,a,a],[a,[a,a]],[]],[a]";
+        AST ast = automata.parseDeterministic(input);
+        assertEquals(input, ast.walkTerminals());
+        List<Set<ParseTreeEdge>> l = automata.parseForest(input).toList();
+        assertEquals(automata.buildAST(automata.puretrace(l.get(0).iterator().next(), l).iterator().next()).toString(), ast.toString());
+
+        assertNull(automata.parseDeterministic("[a,a"));
+        assertNull(automata.parseDeterministic(""));
+        assertEquals(1, automata.parse(input).size());
+        assertTrue(automata.parse("").isEmpty());
+        assertNull(automata.parse("[a,a"));
+        //The empty input is only recognized if the start NonTerminal is nullable
+        Automata nonempty = getAutomata("S : \"a\" A;\n" +
+                                        "A : \"a\" A\n" +
+                                        "  | e;");
+        assertTrue(nonempty.isDeterministic());
+        assertNull(nonempty.parse(""));
+        assertNull(nonempty.parse("b"));
+        assertEquals(1, nonempty.parse("aa").size());
+        input = "[a,a],".repeat(1000) + "a";
+        assertEquals(input, automata.parseDeterministic(input).walkTerminals());
+
+        //Colored Edges
+        automata = getAutomata("S : [ \"[\" A \"]\" ] S\n" +
+                                "  | e ;\n" +
+                                "A : [ \"{\" B \"}\" ] A\n" +
+                                "  | e ;\n" +
+                                "B : [ \"(\" C \")\" ] B\n" +
+                                "  | e ;\n" +
+                                "C : \"c\" C\n" +
+                                "  | e ;");
+        assertTrue(automata.isDeterministic());
+        assertEquals("[{(ccc][{(c)}]", automata.parseDeterministic("[{(ccc][{(c)}]").walkTerminals());
+
+        assertFalse(getAutomata("S : \"a\" A\n" +
+                                "  | \"a\" B\n" +
+                                "  | e;\n" +
+                                "A : \"a\" S\n" +
+                                "  | e;\n" +
+                                "B : \"a\" S\n" +
+                                "  | e;").isDeterministic());
+    }
+
+    @Test
+    public void testCompactAST() {
+
+        String grammar ="L : [ \"[\" L \"]\" ] K\n" +
+                        "  | \"a\" K\n" +
+                        "  | e;\n" +
+
+                        "K : \",\" L\n" +
+                        "  | e;";
+
+        Automata automata = getAutomata(grammar);
+        String input = "[[a,a,a],[a,[a,a]],[]],[a]";
+        CompactAST compact = automata.parseCompact(input);
+        AST ast = automata.parseDeterministic(input);
+        assertEquals(ast.toString(), compact.toAST().toString());
+        assertEquals(input, compact.walkTerminals());
+        assertEquals(CompactAST.of(ast).size(), compact.size());
+
+        //Offsets of the terminals are their positions in the input
+        for (int node = 0; node < compact.size(); node++) {
+            if (compact.isTerminal(node)) {
+                assertEquals(input.charAt(compact.getOffset(node)), compact.getSymbol(node).charAt(0));
+            }
+        }
+
+        //The visitor enters and exits every node in depth-first order
+        StringBuilder terminals = new StringBuilder();
+        int[] depth = {0, 0};
+        compact.accept(new CompactAST.Visitor() {
+            public void enter(int node) {
+                if (compact.isTerminal(node)) terminals.append(compact.getSymbol(node));
+                depth[1] = Math.max(depth[1], ++depth[0]);
+            }
+            public void exit(int node) {
+                depth[0]--;
+            }
+        });
+        assertEquals(input, terminals.toString());
+        assertEquals(0, depth[0]);
+
+        //Conversion from the legacy AST
+        assertEquals(ast.toString(), CompactAST.of(ast).toString());
+        assertEquals(compact.getSymbols().size(), CompactAST.of(ast).getSymbols().size());
+
+        assertNull(automata.parseCompact("[a,a"));
+        assertNull(automata.parseCompact(""));
+        input = "[a,a],".repeat(100000) + "a";
+        assertEquals(input, automata.parseCompact(input).walkTerminals());
+
+        assertThrows(IllegalStateException.class, () -> getAutomata("S : \"a\" A\n" +
+                                "  | \"a\" B\n" +
+                                "  | e;\n" +
+                                "A : \"a\" S\n" +
+                                "  | e;\n" +
+                                "B : \"a\" S\n" +
+                                "  | e;").parseCompact("aa"));
+    }
+
+    @Test
+    public void testInterning() {
+
+        String grammar ="S : \"a\" S\n" +
+                        "  | \"a\" A\n" +
+                        "  | e;\n" +
+
+                        "A : \"a\" S\n" +
+                        "  | \"a\" A\n" +
+                        "  | e;\n";
+
+        Automata automata = getAutomata(grammar);
+
+        //Equal ASTs of different derivations are equal and have the same hash
+        List<AST> trees = new ArrayList<>();
+        automata.parseLazily("aaaa").forEachRemaining(trees::add);
+        assertEquals(16, trees.size());
+        assertEquals(8, new HashSet<>(trees).size());
+
+        //Every distinct subtree has a single canonical node
+        ASTInterner interner = new ASTInterner();
+        Set<AST> canonical = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (AST ast : trees) {
+            AST c = interner.intern(ast);
+            assertTrue(c.isInterned());
+            assertEquals(ast, c);
+            assertEquals(ast.hashCode(), c.hashCode());
+            assertSame(c, interner.intern(c));
+            canonical.add(c);
+        }
+        assertEquals(8, canonical.size());
+        //The 8 ASTs of 9 nodes share their subtrees: the terminal, 2 + 4 + 8 subtrees below the root and 8 roots
+        assertEquals(1 + 2 + 4 + 8 + 8, interner.size());
+        assertThrows(UnsupportedOperationException.class, () -> interner.intern(trees.get(0)).addChild(new AST("a")));
+
+        //Canonical nodes of different interners are compared structurally
+        assertEquals(interner.intern(trees.get(0)), new ASTInterner().intern(trees.get(0)));
+        assertNotEquals(interner.intern(trees.get(0)), interner.intern(trees.get(trees.size() - 1)));
+
+        //Deep ASTs are compared and hashed iteratively
+        AST deep = new AST("S");
+        AST node = deep;
+        for (int i = 0; i < 100000; i++) {
+            AST child = new AST("S");
+            node.addChild(new AST("a"));
+            node.addChild(child);
+            node = child;
+        }
+        assertEquals(deep, new ASTInterner().intern(deep));
+        assertEquals(deep.hashCode(), new ASTInterner().intern(deep).hashCode());
+    }
+
+    @Test
+    public void testParseListener() {
+
+        String grammar ="L : [ \"[\" L \"]\" ] K\n" +
+                        "  | \"a\" K\n" +
+                        "  | e;\n" +
+
+                        "K : \",\" L\n" +
+                        "  | e;";
+
+        Automata automata = getAutomata(grammar);
+
+        //The events of a deterministic automata describe the same AST as parseDeterministic
+        String input = "[[a,a,a],[a,[a,a]],[]],[a]";
+        ASTListener listener = new ASTListener(input);
+        assertTrue(automata.parse(input, listener));
+        assertEquals(automata.parseDeterministic(input).toString(), listener.getResult().toString());
+        assertFalse(automata.parse("[a,a", new ASTListener("[a,a")));
+
+        //Large inputs only keep the open NonTerminals
+        input = "[a,a],".repeat(100000) + "a";
+        int[] count = {0, 0};
+        assertTrue(automata.parse(input, new ParseListener() {
+            public void enterNonTerminal(String nonterminal, int offset) { count[0]++; }
+            public void terminal(String terminal, int offset) { count[1]++; }
+            public void exitNonTerminal(String nonterminal) { count[0]--; }
+        }));
+        assertEquals(0, count[0]);
+        assertEquals(input.length(), count[1]);
+
+        //Colored Edges
+        automata = getAutomata("S : [ \"[\" A \"]\" ] S\n" +
+                                "  | e ;\n" +
+                                "A : [ \"{\" B \"}\" ] A\n" +
+                                "  | e ;\n" +
+                                "B : [ \"(\" C \")\" ] B\n" +
+                                "  | e ;\n" +
+                                "C : \"c\" C\n" +
+                                "  | e ;");
+        listener = new ASTListener("[{(ccc][{(c)}]");
+        assertTrue(automata.parse("[{(ccc][{(c)}]", listener));
+        assertEquals(automata.parseDeterministic("[{(ccc][{(c)}]").toString(), listener.getResult().toString());
+
+        //Every choice at the ambiguous nodes reports an AST of parse
+        automata = getAutomata("S : \"a\" A\n" +
+                                "  | \"a\" B\n" +
+                                "  | e;\n" +
+                                "A : \"a\" S\n" +
+                                "  | e;\n" +
+                                "B : \"a\" S\n" +
+                                "  | e;");
+        Set<AST> expected = automata.parse("aaaaaa");
+        Set<AST> actual = new HashSet<>();
+        for (int choice = 0; choice < 2; choice++) {
+            int c = choice;
+            int[] ambiguities = {0};
+            listener = new ASTListener("aaaaaa") {
+                public int ambiguity(String nonterminal, int offset, int alternatives) {
+                    ambiguities[0]++;
+                    return c;
+                }
+            };
+            assertTrue(automata.parse("aaaaaa", listener));
+            assertEquals(3, ambiguities[0]);
+            assertTrue(expected.contains(listener.getResult()));
+            actual.add(listener.getResult());
+        }
+        assertEquals(2, actual.size());
+
+        //The alternatives of a nesting are pairs of its call and return
+        automata = getAutomata("S : [ \"[\" A \"]\" ] B\n" +
+                                "  | [ \"[\" A \"]\" ] C\n" +
+                                "  | e;\n" +
+                                "A : \"a\" A\n" +
+                                "  | e;\n" +
+                                "B : \"b\" S\n" +
+                                "  | e;\n" +
+                                "C : \"b\" S\n" +
+                                "  | e;");
+        Set<String> trees = new HashSet<>(Arrays.asList("S [[] [A [a]] []] [B [b]]", "S [[] [A [a]] []] [C [b]]"));
+        actual.clear();
+        for (int choice = 0; choice < 2; choice++) {
+            int c = choice;
+            listener = new ASTListener("[a]b") {
+                public int ambiguity(String nonterminal, int offset, int alternatives) {
+                    assertEquals("S", nonterminal);
+                    assertEquals(0, offset);
+                    assertEquals(2, alternatives);
+                    return c;
+                }
+            };
+            assertTrue(automata.parse("[a]b", listener));
+            assertTrue(trees.contains(listener.getResult().toString()));
+            actual.add(listener.getResult());
+        }
+        assertEquals(2, actual.size());
+
+        //Events are reported while recognizing, once the nestings which are read have a single derivation
+        automata = getAutomata("S : [ \"[\" A \"]\" ] S\n" +
+                                "  | e;\n" +
+                                "A : \"a\" B\n" +
+                                "  | \"a\" C;\n" +
+                                "B : \"b\" D;\n" +
+                                "C : \"c\" D;\n" +
+                                "D : e;");
+        assertFalse(automata.isDeterministic());
+        listener = new ASTListener("[ab][ac][ab]");
+        assertTrue(automata.parse("[ab][ac][ab]", listener));
+        assertEquals(automata.parse("[ab][ac][ab]"), Collections.singleton(listener.getResult()));
+        String[] rejected = {"[ab][ac]x", "[ab][ac][ab", "[ab][ac][ax]"};
+        int[] offsets = {8, 11, 10};
+        for (int k = 0; k < rejected.length; k++) {
+            List<Integer> terminals = new ArrayList<>();
+            int[] offset = {-1};
+            assertFalse(automata.parse(rejected[k], new ParseListener() {
+                public void enterNonTerminal(String nonterminal, int offset) { }
+                public void terminal(String terminal, int offset) { terminals.add(offset); }
+                public void exitNonTerminal(String nonterminal) { }
+                public void rejected(int o) { offset[0] = o; }
+            }));
+            assertEquals(offsets[k], offset[0]);
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7), terminals);
+        }
+    }
+
+    @Test
+    public void testPuretrace() {
+
+        String grammar ="S : [ \"[\" A \"]\" ] S\n" +
+                        "  | e;\n" +
+
+                        "A : \"a\" A\n" +
+                        "  | \"a\" B\n" +
+                        "  | e;\n" +
+
+                        "B : \"a\" A\n" +
+                        "  | e;";
+
+        Automata automata = getAutomata(grammar);
+        ForkJoinPool pool = new ForkJoinPool(4);
+
+        //Branches do not share their nesting stack, so every derivation is found once
+        for (String input : new String[] {"[aa]", "[aa][aa]", "[aa][][aa]", "[aaa][a][aa]"}) {
+            List<Set<ParseTreeEdge>> l = automata.parseForest(input).toList();
+            Set<List<ParseTreeEdge>> traces = new HashSet<>();
+            for (ParseTreeEdge start : l.get(0)) {
+                traces.addAll(automata.puretrace(start, l));
+            }
+            assertEquals(automata.countParses(input), BigInteger.valueOf(traces.size()));
+
+            Set<List<ParseTreeEdge>> parallel = new HashSet<>();
+            for (ParseTreeEdge start : l.get(0)) {
+                parallel.addAll(automata.puretrace(start, l, pool));
+            }
+            assertEquals(traces, parallel);
+            assertEquals(automata.parse(input), automata.parse(input, pool));
+        }
+
+        //Long traces are extracted without recursion
+        String input = "[]".repeat(100000);
+        List<Set<ParseTreeEdge>> l = automata.parseForest(input).toList();
+        Set<List<ParseTreeEdge>> traces = automata.puretrace(l.get(0).iterator().next(), l);
+        assertEquals(1, traces.size());
+        assertEquals(l.size(), traces.iterator().next().size());
+
+        //2^12 derivations of 24 a's, explored in parallel
+        automata = getAutomata("S : \"a\" A\n" +
+                                "  | \"a\" B\n" +
+                                "  | e;\n" +
+                                "A : \"a\" S\n" +
+                                "  | e;\n" +
+                                "B : \"a\" S\n" +
+                                "  | e;");
+        assertEquals(4096, automata.parse("a".repeat(24), pool).size());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testTraversal() throws IOException {
+
+        String grammar ="L : [ \"[\" L \"]\" ] K\n" +
+                        "  | \"a\" K\n" +
+                        "  | e;\n" +
+
+                        "K : \",\" L\n" +
+                        "  | e;";
+
+        Automata automata = getAutomata(grammar);
+        AST ast = automata.parseDeterministic("[a,a]");
+        assertEquals("L [[] [L [a] [K [,] [L [a]]]] []]", ast.toString());
+        assertEquals(4, ast.depth());
+        assertEquals(0, new AST("a").depth());
+
+        List<String> pre = new ArrayList<>();
+        ast.preOrder().forEachRemaining(node -> pre.add(node.getValue()));
+        assertEquals(Arrays.asList("L", "[", "L", "a", "K", ",", "L", "a", "]"), pre);
+        List<String> post = new ArrayList<>();
+        ast.postOrder().forEachRemaining(node -> post.add(node.getValue()));
+        assertEquals(Arrays.asList("[", "a", ",", "a", "L", "K", "L", "]", "L"), post);
+
+        List<String> visited = new ArrayList<>();
+        ast.accept(new AST.Visitor() {
+            public void enter(AST node) {
+                visited.add(node.getValue());
+            }
+            public void exit(AST node) {
+                visited.add("/" + node.getValue());
+            }
+        });
+        assertEquals(Arrays.asList("L", "[", "/[", "L", "a", "/a", "K", ",", "/,", "L", "a", "/a", "/L", "/K", "/L", "]", "/]", "/L"), visited);
+
+        //A million levels of nesting
+        int n = 1000000;
+        String input = "[".repeat(n) + "]".repeat(n);
+        ast = automata.parseDeterministic(input);
+        assertEquals(n, ast.depth());
+        StringWriter out = new StringWriter();
+        ast.walkTerminals(out);
+        assertEquals(input, out.toString());
+        assertEquals(input, ast.walkTerminals());
+        assertTrue(ast.toString().startsWith("L [[] [L [[] [L"));
+        input = "[".repeat(n / 10) + "]".repeat(n / 10);
+        assertEquals(input, automata.parseSPPF(input).walkTerminals());
+    }
+
+    @Test
+    public void testBinaryEncoding() {
+
+        String grammar ="S : [ \"[\" A \"]\" ] S {0.5}\n" +
+                        "  | e;\n" +
+
+                        "A : \"a\" A {0.7}\n" +
+                        "  | \"a\" B {0.3}\n" +
+                        "  | e;\n" +
+
+                        "B : \"a\" A\n" +
+                        "  | e;";
+
+        Generator g = new Generator(grammar);
+        Automata automata = getAutomata(g);
+        String input = "[aa][][aaa][a]";
+
+        //AST
+        for (AST ast : automata.parse(input)) {
+            ByteBuffer buffer = BinaryWriter.write(ast);
+            assertTrue(buffer.remaining() < ast.toString().length());
+            assertEquals(ast, new BinaryReader(buffer).readAST());
+            assertFalse(buffer.hasRemaining());
+        }
+
+        //SPPF, all derivations and weights are kept
+        SPPF sppf = automata.parseSPPF(input);
+        SPPF read = new BinaryReader(BinaryWriter.write(sppf)).readSPPF();
+        assertEquals(input, read.walkTerminals());
+        assertEquals(countNodes(sppf), countNodes(read));
+        assertEquals(automata.countParses(input), read.evaluate(Semiring.COUNTING, null));
+        assertEquals(sppf.evaluate(Semiring.INSIDE, g.getWeights()), read.evaluate(Semiring.INSIDE, g.getWeights()), 1e-12);
+
+        //Parse Forest, read from a direct buffer
+        ParseForest forest = automata.parseForest(input);
+        ByteBuffer encoded = BinaryWriter.write(forest);
+        ByteBuffer direct = ByteBuffer.allocateDirect(encoded.remaining());
+        direct.put(encoded).flip();
+        assertEquals(forest.toList(), new BinaryReader(direct).readForest(automata.getPruner()).toList());
+        assertThrows(IllegalStateException.class, () -> new BinaryReader(BinaryWriter.write(forest)).readSPPF());
+        assertThrows(IllegalStateException.class, () -> new BinaryReader(BinaryWriter.write(forest)).readForest(getAutomata("S : \"a\" S | e;").getPruner()));
+
+        //Deep ASTs
+        input = "[]".repeat(100000);
+        AST ast = automata.parse(input).iterator().next();
+        assertEquals(input, new BinaryReader(BinaryWriter.write(ast)).readAST().walkTerminals());
+    }
+
+    @Test
+    public void testPriorities() {
+
+        String grammar ="S : \"a\" S {priority 1}\n" +
+                        "  | \"a\" A\n" +
+                        "  | e;\n" +
+
+                        "A : \"a\" S\n" +
+                        "  | \"a\" A {priority 1}\n" +
+                        "  | e;\n";
+
+        Generator g = new Generator(grammar);
+        Automata automata = getAutomata(g);
+        assertEquals(BigInteger.TWO.pow(20), automata.countParses("a".repeat(20)));
+
+        //Every NonTerminal keeps its preferred alternative, so 2^n derivations become 1
+        automata.setPriorities(g.getPriorities());
+        assertEquals(BigInteger.ONE, automata.countParses("a".repeat(20)));
+        assertEquals(1, automata.parse("a".repeat(20)).size());
+        assertEquals("S [a] [S [a] [S [a]]]", automata.parse("aaa").iterator().next().toString());
+        assertEquals(BigInteger.ONE, automata.countParses("a".repeat(100000)));
+        automata.setPriorities(null);
+        assertEquals(BigInteger.TWO.pow(20), automata.countParses("a".repeat(20)));
+        assertThrows(IllegalArgumentException.class, () -> new Generator("S : \"a\" S {priority -1}\n  | e;"));
+
+        //Priorities of nesting rules
+        g = new Generator("S : [ \"(\" A \")\" ] S {priority 2}\n" +
+                            "  | [ \"(\" B \")\" ] S {priority 1}\n" +
+                            "  | \"b\" S\n" +
+                            "  | e;\n" +
+                            "A : \"a\" A\n" +
+                            "  | e;\n" +
+                            "B : \"a\" B\n" +
+                            "  | \"b\" B\n" +
+                            "  | e;");
+        automata = getAutomata(g);
+        assertEquals(BigInteger.valueOf(4), automata.countParses("(aa)b(a)"));
+        automata.setPriorities(g.getPriorities());
+        assertEquals(BigInteger.ONE, automata.countParses("(aa)b(a)"));
+        assertEquals("S [(] [A [a] [A [a]]] [)] [S [b] [S [(] [A [a]] [)]]]", automata.parse("(aa)b(a)").iterator().next().toString());
+        //A lower priority is kept if the preferred alternative has no derivation
+        assertEquals(BigInteger.ONE, automata.countParses("(ab)(a)"));
+        assertEquals("S [(] [B [a] [B [b]]] [)] [S [(] [A [a]] [)]]", automata.parse("(ab)(a)").iterator().next().toString());
+    }
+
+    @Test
+    public void testStateOrder() {
+
+        //States with equally many pairs are ordered consistently
+        State s1 = new State(new NonTerminal("S"), new NonTerminal("A"));
+        s1.addPair(new NonTerminal("S"), new NonTerminal("B"));
+        State s2 = new State(new NonTerminal("S"), new NonTerminal("A"));
+        s2.addPair(new NonTerminal("S"), new NonTerminal("S"));
+        State s3 = new State(new NonTerminal("S"), new NonTerminal("B"));
+        s3.addPair(new NonTerminal("S"), new NonTerminal("A"));
+        assertEquals(Integer.signum(s1.compareTo(s2)), -Integer.signum(s2.compareTo(s1)));
+        assertTrue(s1.compareTo(s2) < 0);
+        assertEquals(0, s1.compareTo(s3));
+        assertEquals(s1, s3);
+
+        //The Generator lost States of this grammar, so that e.g. "bba" was rejected
+        String grammar ="S : \"a\" B\n" +
+                        "  | \"a\" S\n" +
+                        "  | \"b\" B\n" +
+                        "  | \"b\" A\n" +
+                        "  | e;\n" +
+
+                        "A : \"a\" B\n" +
+                        "  | \"a\" A\n" +
+                        "  | \"b\" S\n" +
+                        "  | \"b\" A\n" +
+                        "  | e;\n" +
+
+                        "B : \"a\" B\n" +
+                        "  | \"a\" A\n" +
+                        "  | \"b\" S\n" +
+                        "  | \"b\" A\n" +
+                        "  | e;";
+
+        Automata automata = getAutomata(grammar);
+        //Every input of a and b is in the language
+        for (int length = 0; length <= 8; length++) {
+            for (int bits = 0; bits < 1 << length; bits++) {
+                StringBuilder input = new StringBuilder();
+                for (int i = 0; i < length; i++) {
+                    input.append(((bits >> i) & 1) == 0 ? 'a' : 'b');
+                }
+                assertTrue(automata.recognize(input.toString()), input.toString());
+            }
+        }
+    }
+
+    @Test
+    public void testWorkloadGenerator() {
+        //The same seed generates the same workload
+        WorkloadGenerator generator = new WorkloadGenerator(7, 12, 3, 2, 5, 1);
+        assertEquals(generator.grammar(), new WorkloadGenerator(7, 12, 3, 2, 5, 1).grammar());
+        assertEquals(generator.input(1000), new WorkloadGenerator(7, 12, 3, 2, 5, 1).input(1000));
+        assertNotEquals(generator.grammar(), new WorkloadGenerator(8, 12, 3, 2, 5, 1).grammar());
+
+        Automata automata = getAutomata(generator.grammar());
+        for (int length : new int[]{0, 1, 2, 100, 100000}) {
+            String input = generator.input(length);
+            assertEquals(length, input.length());
+            assertTrue(automata.recognize(input));
+            int depth = 0;
+            for (char c : input.toCharArray()) {
+                if (c == '[' || c == '(') depth++;
+                if (c == ']' || c == ')') depth--;
+                assertTrue(depth <= 5);
+            }
+        }
+        assertTrue(generator.input(100000).chars().anyMatch(c -> c == '('));
+        assertEquals(BigInteger.ONE, automata.countParses(generator.input(1000)));
+
+        //Every symbol has ambiguity possible derivations
+        generator = new WorkloadGenerator(1, 5, 2, 1, 0, 2);
+        automata = getAutomata(generator.grammar());
+        assertEquals(BigInteger.TWO.pow(20), automata.countParses(generator.input(20)));
+
+        assertThrows(IllegalArgumentException.class, () -> new WorkloadGenerator(1, 2, 1, 1, 0, 3));
+
+        //Combined grammars stay within their bounds
+        Pair<String, String> combined = WorkloadGenerator.combined(new Random(3), 100, 199);
+        int rules = combined.getLeft().split("\n").length;
+        assertTrue(rules >= 100 && rules <= 199);
+        assertTrue(getAutomata(combined.getLeft()).recognize(combined.getRight()));
+    }
+
+    @Test
+    public void testMetrics() {
+        Automata automata = getAutomata("S : [ \"[\" A \"]\" ] S\n" +
+                                        "  | e ;\n" +
+                                        "A : [ \"{\" B \"}\" ] A\n" +
+                                        "  | e ;\n" +
+                                        "B : [ \"(\" C \")\" ] B\n" +
+                                        "  | e ;\n" +
+                                        "C : \"c\" C\n" +
+                                        "  | e ;");
+        List<ParseStatistics> reports = new ArrayList<>();
+        automata.setMetricsListener(reports::add);
+
+        //Every call is reported once, also if it calls other parse methods
+        assertEquals(1, automata.parse("[{(ccc][{(c)}]").size());
+        assertEquals(1, reports.size());
+        ParseStatistics statistics = reports.get(0);
+        assertEquals(14, statistics.getInputLength());
+        assertEquals(14, statistics.getTransitions());
+        //The first "]" closes the pending "{" and "(" with a Colored Edge
+        assertEquals(1, statistics.getColoredEdges());
+        assertEquals(2, statistics.getPoppedFrames());
+        assertEquals(3, statistics.getMaxStackDepth());
+        assertTrue(statistics.getTotalTime() >= statistics.getRecognizeTime());
+
+        assertFalse(automata.recognize("[{(c"));
+        assertEquals(2, reports.size());
+        assertEquals(4, reports.get(1).getTransitions());
+
+        //Forest and traces of an ambiguous grammar
+        automata = getAutomata("S : \"a\" S\n" +
+                                "  | \"a\" A\n" +
+                                "  | e;\n" +
+                                "A : \"a\" S\n" +
+                                "  | \"a\" A\n" +
+                                "  | e;\n");
+        reports.clear();
+        automata.setMetricsListener(reports::add);
+        //16 traces, of which the ASTs only differ in the omitted last epsilon NonTerminal
+        assertEquals(8, automata.parse("aaaa").size());
+        assertEquals(1, reports.size());
+        statistics = reports.get(0);
+        assertEquals(16, statistics.getTraces());
+        assertEquals(0, statistics.getColoredEdges());
+        assertTrue(statistics.getForestEdges() >= statistics.getPrunedForestEdges());
+        assertEquals(automata.parseForest("aaaa").edgeCount(), statistics.getPrunedForestEdges());
+        assertEquals(8, automata.parse("aaaa", ForkJoinPool.commonPool()).size());
+        assertEquals(16, reports.get(2).getTraces());
+
+        //Without a listener nothing is reported
+        automata.setMetricsListener(null);
+        automata.parse("aaaa");
+        assertEquals(3, reports.size());
+    }
+
+    @Test
+    public void testFlightRecorder() throws IOException {
+        Path file = Files.createTempFile("parse", ".jfr");
+        try (Recording recording = new Recording()) {
+            for (String event : new String[]{"vpg.Generator", "vpg.GeneratorRound", "vpg.Colorizer", "vpg.Parse", "vpg.Prune", "vpg.Puretrace"}) {
+                recording.enable(event).withoutThreshold();
+            }
+            recording.start();
+            Automata automata = getAutomata("S : \"a\" S\n" +
+                                            "  | \"a\" A\n" +
+                                            "  | e;\n" +
+                                            "A : \"a\" S\n" +
+                                            "  | \"a\" A\n" +
+                                            "  | e;\n");
+            automata.parse("aaaa");
+            assertFalse(automata.recognize("b"));
+            recording.stop();
+            recording.dump(file);
+        }
+        Map<String, List<RecordedEvent>> events = new HashMap<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            events.computeIfAbsent(event.getEventType().getName(), k -> new ArrayList<>()).add(event);
+        }
+        Files.delete(file);
+
+        RecordedEvent generator = events.get("vpg.Generator").get(0);
+        assertEquals(2, generator.getInt("rules"));
+        assertEquals(generator.getInt("rounds"), events.get("vpg.GeneratorRound").size());
+        int grammarId = generator.getInt("grammarId");
+        assertEquals(grammarId, events.get("vpg.Colorizer").get(0).getInt("grammarId"));
+
+        //parse calls parseForest, which is recorded as well
+        List<String> methods = new ArrayList<>();
+        for (RecordedEvent event : events.get("vpg.Parse")) {
+            assertEquals(grammarId, event.getInt("grammarId"));
+            methods.add(event.getString("method"));
+            if (event.getString("method").equals("parse")) {
+                assertEquals(4, event.getInt("inputLength"));
+                assertEquals(8, event.getInt("results"));
+            }
+            if (event.getString("method").equals("recognize")) {
+                assertFalse(event.getBoolean("accepted"));
+            }
+        }
+        assertTrue(methods.containsAll(Arrays.asList("parse", "parseForest", "recognize")));
+        RecordedEvent prune = events.get("vpg.Prune").get(0);
+        assertTrue(prune.getLong("forestEdges") >= prune.getLong("prunedForestEdges"));
+        int traces = 0;
+        for (RecordedEvent event : events.get("vpg.Puretrace")) {
+            traces += event.getInt("traces");
+        }
+        assertEquals(16, traces);
+    }
+
+    @Test
+    public void testFootprint() {
+        //Without nesting rules there are no Colored Edges
+        Automata automata = getAutomata("S : \"a\" S\n" +
+                                        "  | e;");
+        MemoryFootprint footprint = automata.footprint();
+        assertTrue(footprint.getStates() > 0);
+        assertTrue(footprint.getTransitions() > 0);
+        assertTrue(footprint.getParseTreeEdges() > 0);
+        assertEquals(0, footprint.getColoredEdges() - MemoryFootprint.treeMap(0));
+
+        //Colored Edges copy their ParseTreeEdges
+        long before = Allocation.allocated();
+        automata = getAutomata("S : [ \"[\" A \"]\" ] S\n" +
+                                "  | e ;\n" +
+                                "A : [ \"{\" B \"}\" ] A\n" +
+                                "  | e ;\n" +
+                                "B : [ \"(\" C \")\" ] B\n" +
+                                "  | e ;\n" +
+                                "C : \"c\" C\n" +
+                                "  | e ;");
+        long allocated = Allocation.allocated() - before;
+        MemoryFootprint colored = automata.footprint();
+        assertTrue(colored.getColoredEdges() > MemoryFootprint.treeMap(0));
+        assertTrue(colored.getColorTables() > footprint.getColorTables());
+        //Every retained object was allocated while the grammar was compiled, next to the temporary objects of the phases
+        assertTrue(colored.getTotal() < allocated);
+
+        //The footprint grows with the grammar
+        assertTrue(getAutomata(Workload.of("deepGrammar-100").getGrammar()).footprint().getTotal()
+                < getAutomata(Workload.of("deepGrammar-200").getGrammar()).footprint().getTotal());
+
+        //The estimates are close to the bytes which the JVM allocates, whatever its object layout
+        before = Allocation.allocated();
+        ParseForest empty = new ParseForest(automata.getPruner(), 100000);
+        allocated = Allocation.allocated() - before;
+        assertEquals(1, (double) empty.footprint() / allocated, 0.1);
+        assertEquals(1, (double) automata.estimateForestFootprint("c".repeat(100000)) / allocated, 0.1);
+
+        //Without pending calls the estimate of a Parse Forest is its footprint after parsing
+        String input = "[{(ccc)}][{(c)}]";
+        ParseForest forest = automata.parseForest(input);
+        assertEquals(automata.estimateForestFootprint(input), forest.footprint());
+        assertTrue(automata.estimateForestFootprint(input + input) > forest.footprint());
+        //Every pending call closed by a Colored Edge adds a position
+        assertTrue(automata.parseForest("[{(ccc][{(c)}]").footprint() > automata.estimateForestFootprint("[{(ccc][{(c)}]"));
+    }
+
+    @Test
+    public void testBudgets() {
+        //Every derivation of the grammar of test3 has a different AST
+        Automata automata = getAutomata("S : \"a\" A\n" +
+                                        "  | \"a\" B\n" +
+                                        "  | e;\n" +
+                                        "A : \"a\" S\n" +
+                                        "  | e;\n" +
+                                        "B : \"a\" S\n" +
+                                        "  | e;");
+        String input = "a".repeat(24);
+
+        //Within the budget the result is the same as without
+        assertEquals(automata.parse(input), automata.parse(input, new ParseOptions().maxDerivations(1 << 12)));
+        assertTrue(automata.recognize(input, new ParseOptions().timeout(Duration.ofMinutes(1))));
+        assertNull(automata.parse("b", new ParseOptions().maxDerivations(0)));
+
+        //Too many derivations return the ASTs built until then
+        BudgetExceededException e = assertThrows(BudgetExceededException.class,
+                () -> automata.parse(input, new ParseOptions().maxDerivations(100)));
+        assertEquals(BudgetExceededException.Reason.DERIVATIONS, e.getReason());
+        assertEquals(100, e.getPartialResult().size());
+        assertTrue(automata.parse(input).containsAll(e.getPartialResult()));
+
+        //A large number of derivations is stopped without running out of memory
+        Workload broad = Workload.of("broadAmbiguity-10");
+        e = assertThrows(BudgetExceededException.class,
+                () -> getAutomata(broad.getGrammar()).parse(broad.getInput(), new ParseOptions().maxDerivations(1000)));
+        assertEquals(BudgetExceededException.Reason.DERIVATIONS, e.getReason());
+        assertTrue(e.getPartialResult().size() > 0 && e.getPartialResult().size() <= 1000);
+
+        //Too many forest edges stop while recognizing
+        e = assertThrows(BudgetExceededException.class,
+                () -> automata.parseForest(input, new ParseOptions().maxForestEdges(10)));
+        assertEquals(BudgetExceededException.Reason.FOREST_EDGES, e.getReason());
+        assertTrue(e.getPartialResult().isEmpty());
+        //The Parse Forest of a long input is not allocated before its edges are checked, even if it does not fit in the heap
+        StringBuilder chain = new StringBuilder("S : \"a\" S\n  | \"b\" T0\n  | e;\n");
+        for (int i = 0; i < 2000; i++) {
+            chain.append("T").append(i).append(" : \"b\" T").append(i + 1).append(";\n");
+        }
+        Automata wide = getAutomata(chain.append("T2000 : e;").toString());
+        int words = wide.getPruner().getWords();
+        String longInput = "a".repeat((int) Math.min(Runtime.getRuntime().maxMemory() / (8L * words) + 1, Integer.MAX_VALUE / words - 1));
+        e = assertThrows(BudgetExceededException.class, () -> wide.parseForest(longInput, new ParseOptions().maxForestEdges(1000)));
+        assertEquals(BudgetExceededException.Reason.FOREST_EDGES, e.getReason());
+
+        //Deadline and cancellation
+        e = assertThrows(BudgetExceededException.class,
+                () -> automata.parse(input, new ParseOptions().timeout(Duration.ZERO)));
+        assertEquals(BudgetExceededException.Reason.DEADLINE, e.getReason());
+        e = assertThrows(BudgetExceededException.class,
+                () -> automata.recognize(input, new ParseOptions().deadline(Instant.now().minusSeconds(1))));
+        assertEquals(BudgetExceededException.Reason.DEADLINE, e.getReason());
+        CancellationToken token = new CancellationToken();
+        ParseOptions options = new ParseOptions().cancellation(token);
+        assertEquals(1 << 12, automata.parse(input, options).size());
+        token.cancel();
+        e = assertThrows(BudgetExceededException.class, () -> automata.parse(input, options));
+        assertEquals(BudgetExceededException.Reason.CANCELLED, e.getReason());
+
+        //Deterministic automata check the deadline as well
+        Automata deterministic = getAutomata("S : \"a\" S\n" +
+                                             "  | e;");
+        assertTrue(deterministic.isDeterministic());
+        e = assertThrows(BudgetExceededException.class,
+                () -> deterministic.parse("aaaa", new ParseOptions().timeout(Duration.ZERO)));
+        assertEquals(BudgetExceededException.Reason.DEADLINE, e.getReason());
+        assertThrows(IllegalArgumentException.class, () -> new ParseOptions().maxDerivations(-1));
+    }
+
+    @Test
+    public void testLockstep() {
+        //Colored Edges and pending calls are handled like in recognize
+        Automata automata = getAutomata("S : [ \"[\" A \"]\" ] S\n" +
+                                        "  | e ;\n" +
+                                        "A : [ \"{\" B \"}\" ] A\n" +
+                                        "  | e ;\n" +
+                                        "B : [ \"(\" S \")\" ] B\n" +
+                                        "  | e ;");
+        List<String> inputs = Arrays.asList("", "[{()}]", "[{(]", "[{(][{(][{(]", "[{([{()}])}]", "[{([{(]]", "[{([{(]}", "]", "x", "[{()}][");
+        //The tables are compiled by the first call, and then counted in the footprint
+        MemoryFootprint footprint = automata.footprint();
+        assertEquals(0, footprint.getTables());
+        automata.recognizeLockstep(inputs);
+        assertTrue(automata.footprint().getTables() > 0);
+        assertEquals(footprint.getTotal() + automata.footprint().getTables(), automata.footprint().getTotal());
+        for (int lanes : new int[]{1, 3, 32}) {
+            BitSet recognized = automata.recognizeLockstep(inputs, lanes);
+            for (int i = 0; i < inputs.size(); i++) {
+                assertEquals(automata.recognize(inputs.get(i)), recognized.get(i), inputs.get(i));
+            }
+        }
+
+        //Inputs of different lengths, of which some are not recognized
+        WorkloadGenerator generator = new WorkloadGenerator(3, 10, 3, 2, 5, 1);
+        automata = getAutomata(generator.grammar());
+        inputs = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder input = new StringBuilder(generator.input(random.nextInt(100)));
+            if (i % 4 == 0 && input.length() > 0) input.setCharAt(random.nextInt(input.length()), "abc()[]".charAt(random.nextInt(7)));
+            inputs.add(input.toString());
+        }
+        BitSet recognized = automata.recognizeLockstep(inputs);
+        int accepted = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(automata.recognize(inputs.get(i)), recognized.get(i), inputs.get(i));
+            if (recognized.get(i)) accepted++;
+        }
+        assertTrue(accepted > 750 && accepted < 1000);
+        assertTrue(automata.recognizeLockstep(new ArrayList<>()).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> getAutomata("S : e;").recognizeLockstep(Arrays.asList("", "a"), 0));
+    }
+
+    @Test
+    public void testTrie() {
+        Automata automata = getAutomata("S : [ \"[\" A \"]\" ] S\n" +
+                                        "  | e ;\n" +
+                                        "A : [ \"{\" B \"}\" ] A\n" +
+                                        "  | e ;\n" +
+                                        "B : [ \"(\" S \")\" ] B\n" +
+                                        "  | e ;");
+        //Branches of the trie after pending calls and Colored Edges, duplicates and prefixes of other inputs
+        List<String> inputs = Arrays.asList("", "[{()}]", "[{(]", "[{(][{(][{(]", "[{([{()}])}]", "[{([{(]]", "[{([{(]}",
+                "]", "x", "[{()}][", "[{()}]", "[{(", "[{(][{(]");
+        BitSet recognized = automata.recognizeTrie(inputs);
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(automata.recognize(inputs.get(i)), recognized.get(i), inputs.get(i));
+        }
+
+        //Inputs with a long common envelope, with a single rule every concatenation of inputs is an input
+        WorkloadGenerator generator = new WorkloadGenerator(3, 1, 3, 2, 5, 1);
+        automata = getAutomata(generator.grammar());
+        String envelope = generator.input(10000);
+        List<String> messages = new ArrayList<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 500; i++) {
+            StringBuilder message = new StringBuilder(generator.input(random.nextInt(50)));
+            if (i % 4 == 0 && message.length() > 0) message.setCharAt(random.nextInt(message.length()), "abc()[]".charAt(random.nextInt(7)));
+            messages.add(envelope + message);
+        }
+        recognized = automata.recognizeTrie(messages);
+        assertEquals(automata.recognizeLockstep(messages), recognized);
+        for (int i = 0; i < messages.size(); i += 10) {
+            assertEquals(automata.recognize(messages.get(i)), recognized.get(i));
+        }
+        assertTrue(recognized.cardinality() > 375 && recognized.cardinality() < 500);
+
+        //Every distinct prefix is a node of the trie
+        InputTrie trie = new InputTrie(Arrays.asList("abc", "abd", "ab", "", "b", "abc"));
+        assertEquals(6, trie.size());
+        assertTrue(automata.recognizeTrie(new ArrayList<>()).isEmpty());
+    }
+
+    @Test
+    public void testBatch() throws InterruptedException {
+        WorkloadGenerator generator = new WorkloadGenerator(5, 10, 3, 2, 4, 1);
+        Automata automata = getAutomata(generator.grammar());
+        List<String> inputs = new ArrayList<>();
+        for (int length = 0; length < 2000; length++) {
+            String input = generator.input(length % 40);
+            //Every third input is not recognized
+            inputs.add((length % 3 == 0) ? input + "]" : input);
+        }
+
+        //Results are in the order of the inputs and the same as when parsing one input at a time
+        List<BatchResult<Boolean>> recognized = automata.recognizeAll(inputs);
+        assertEquals(inputs.size(), recognized.size());
+        for (int i = 0; i < inputs.size(); i++) {
+            assertEquals(i, recognized.get(i).getIndex());
+            assertEquals(automata.recognize(inputs.get(i)), recognized.get(i).get());
+        }
+
+        //Every input is reported once, by the threads of the executor
+        ConcurrentLinkedQueue<Integer> completed = new ConcurrentLinkedQueue<>();
+        ConcurrentLinkedQueue<ParseStatistics> statistics = new ConcurrentLinkedQueue<>();
+        automata.setMetricsListener(statistics::add);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<String> parsed = inputs.subList(0, 300);
+        List<BatchResult<Set<AST>>> asts = automata.parseAll(parsed, null, executor, result -> completed.add(result.getIndex()));
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        automata.setMetricsListener(null);
+        assertEquals(parsed.size(), completed.size());
+        assertEquals(parsed.size(), new HashSet<>(completed).size());
+        assertEquals(parsed.size(), statistics.size());
+        for (int i = 0; i < parsed.size(); i++) {
+            assertEquals(automata.parse(parsed.get(i)), asts.get(i).get());
+        }
+
+        //An input which exceeds its budget does not affect the other inputs
+        Automata ambiguous = getAutomata(Workload.of("longAmbiguity-1").getGrammar());
+        List<String> budgeted = Arrays.asList("a".repeat(4), "a".repeat(30), "a".repeat(2));
+        asts = ambiguous.parseAll(budgeted, new ParseOptions().maxDerivations(1000));
+        assertTrue(asts.get(0).isSuccess());
+        assertFalse(asts.get(1).isSuccess());
+        assertTrue(asts.get(1).getError() instanceof BudgetExceededException);
+        assertThrows(BudgetExceededException.class, asts.get(1)::get);
+        assertEquals(ambiguous.parse(budgeted.get(2)), asts.get(2).get());
+        assertTrue(automata.recognizeAll(new ArrayList<>()).isEmpty());
+    }
+
+    /**
+     * Builds an AST from the events of a ParseListener and checks the offsets of the terminals
+     */
+    private static class ASTListener implements ParseListener {
+        private final String input;
+        private final Stack<AST> open = new Stack<>();
+        private AST res = null;
+
+        private ASTListener(String input) {
+            this.input = input;
+        }
+
+        public void enterNonTerminal(String nonterminal, int offset) {
+            AST ast = new AST(nonterminal);
+            if (open.isEmpty()) res = ast;
+            else open.peek().addChild(ast);
+            open.push(ast);
+        }
+
+        public void terminal(String terminal, int offset) {
+            assertEquals(input.substring(offset, offset + terminal.length()), terminal);
+            open.peek().addChild(new AST(terminal));
+        }
+
+        public void exitNonTerminal(String nonterminal) {
+            assertEquals(nonterminal, open.pop().getValue());
+        }
+
+        private AST getResult() {
+            assertTrue(open.isEmpty());
+            return res;
+        }
+    }
+
     public Automata getAutomata(String grammar) {
         Generator g = new Generator(grammar);
 //        System.out.println(g.getA());
 //        System.out.println(g.getT());
+        return getAutomata(g);
+    }
+
+    public Automata getAutomata(Generator g) {
         Colorizer c = new Colorizer(g);
         return new Automata(g.getA(), g.getT(), g.getS0(), g.getOpentoclose(), c.getColors(), c.getColoredEdges());
     }
@@ -216,4 +1486,33 @@ public class JUnitTest {
         }
         return true;
     }
-}
\ No newline at end of file
+
+    public BigInteger countTrees(SPPF sppf, Map<SPPF, BigInteger> counts) {
+        if (sppf.getChildren().isEmpty()) return BigInteger.ONE;
+        if (counts.containsKey(sppf)) return counts.get(sppf);
+        BigInteger res = BigInteger.ZERO;
+        for (List<SPPF> alternative : sppf.getChildren()) {
+            BigInteger product = BigInteger.ONE;
+            for (SPPF child : alternative) {
+                product = product.multiply(countTrees(child, counts));
+            }
+            res = res.add(product);
+        }
+        counts.put(sppf, res);
+        return res;
+    }
+
+    public int countNodes(SPPF sppf) {
+        Set<SPPF> visited = new HashSet<>();
+        Stack<SPPF> todo = new Stack<>();
+        todo.push(sppf);
+        while (!todo.isEmpty()) {
+            SPPF node = todo.pop();
+            if (!visited.add(node)) continue;
+            for (List<SPPF> alternative : node.getChildren()) {
+                todo.addAll(alternative);
+            }
+        }
+        return visited.size();
+    }
+}
@@ -0,0 +1,214 @@
+import java.util.*;
+
+/**
+ * Lazily enumerates the ASTs of an SPPF from highest to lowest score.
+ * The score of a derivation is the product of the weights of its rules (as in Semiring.VITERBI), computed as a sum of logarithms.
+ *
+ * Based on the lazy k-best algorithm of Huang and Chiang (Algorithm 3).
+ * (Huang, L., Chiang, D. (2005). Better k-best Parsing. https://doi.org/10.3115/1654494.1654500)
+ * Every node keeps its derivations found so far in order and a queue of candidates. A derivation of a node is an alternative with a rank for every NonTerminal child.
+ * When the next derivation of a node is needed, only the successors of its last derivation are added to the candidates,
+ * for which the children only need to find their next derivation. The recursion of the algorithm is replaced by an explicit stack of requests.
+ */
+public class KBestIterator implements Iterator<AST> {
+
+    private final SPPF root;
+    private final Map<NonTerminal, Map<List<Token>, Double>> weights;
+    private final Map<SPPF, Node> nodes = new HashMap<>();
+    private int rank = 0;
+    private double score = Double.NaN;
+
+    /**
+     * @param root root of the SPPF, or null if there are no derivations
+     * @param weights weights of the rules, rules without a weight have weight 1. Can be null.
+     */
+    public KBestIterator(SPPF root, Map<NonTerminal, Map<List<Token>, Double>> weights) {
+        this.root = root;
+        this.weights = weights;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return root != null && request(root, rank + 1);
+    }
+
+    @Override
+    public AST next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        score = node(root).derivations.get(rank).score;
+        return buildAST(root, rank++);
+    }
+
+    /**
+     * @return logarithm of the score of the last returned AST
+     */
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * Derivation of a node: an alternative with a rank for every NonTerminal child
+     */
+    private static class Derivation {
+        private final int alternative;
+        private final int[] ranks;
+        private final double score;
+
+        private Derivation(int alternative, int[] ranks, double score) {
+            this.alternative = alternative;
+            this.ranks = ranks;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Search state of an SPPF node
+     */
+    private class Node {
+        private final SPPF sppf;
+        //NonTerminal children of every alternative
+        private final List<SPPF[]> children = new ArrayList<>();
+        private final double[] weight;
+        private final List<Derivation> derivations = new ArrayList<>();
+        private final PriorityQueue<Derivation> candidates = new PriorityQueue<>((a, b) -> Double.compare(b.score, a.score));
+        private final Set<List<Integer>> seen = new HashSet<>();
+        private boolean initialized = false;
+        private boolean successorsAdded = false;
+        private boolean exhausted = false;
+
+        private Node(SPPF sppf) {
+            this.sppf = sppf;
+            weight = new double[sppf.getChildren().size()];
+            for (int k = 0; k < weight.length; k++) {
+                List<SPPF> l = new ArrayList<>();
+                for (SPPF child : sppf.getChildren().get(k)) {
+                    if (!child.getChildren().isEmpty()) l.add(child);
+                }
+                children.add(l.toArray(new SPPF[0]));
+                for (Pair<NonTerminal, List<Token>> rule : sppf.getRules().get(k)) {
+                    weight[k] += Math.log(SPPF.weight(Semiring.VITERBI, weights, rule.getLeft(), rule.getRight()));
+                }
+            }
+        }
+
+        /**
+         * Adds a candidate if it has not been added before and all its children have a derivation of the required rank
+         */
+        private void addCandidate(int alternative, int[] ranks) {
+            double s = weight[alternative];
+            SPPF[] c = children.get(alternative);
+            for (int i = 0; i < c.length; i++) {
+                Node child = node(c[i]);
+                if (ranks[i] >= child.derivations.size()) return;
+                s += child.derivations.get(ranks[i]).score;
+            }
+            List<Integer> key = new ArrayList<>();
+            key.add(alternative);
+            for (int r : ranks) key.add(r);
+            if (seen.add(key)) {
+                candidates.add(new Derivation(alternative, ranks, s));
+            }
+        }
+    }
+
+    private Node node(SPPF sppf) {
+        return nodes.computeIfAbsent(sppf, Node::new);
+    }
+
+    /**
+     * Finds derivations of a node until it has the given amount of derivations or no derivations are left
+     * @param sppf SPPF node
+     * @param target required amount of derivations
+     * @return if the node has the required amount of derivations
+     */
+    private boolean request(SPPF sppf, int target) {
+        Stack<Pair<Node, Integer>> requests = new Stack<>();
+        requests.push(new Pair<>(node(sppf), target));
+        while (!requests.isEmpty()) {
+            Node v = requests.peek().getLeft();
+            int t = requests.peek().getRight();
+            if (v.derivations.size() >= t || v.exhausted) {
+                requests.pop();
+                continue;
+            }
+
+            if (!v.initialized) {
+                //The best derivation of every alternative requires the best derivation of its children
+                boolean missing = false;
+                for (SPPF[] c : v.children) {
+                    for (SPPF child : c) {
+                        Node n = node(child);
+                        if (n.derivations.isEmpty() && !n.exhausted) {
+                            requests.push(new Pair<>(n, 1));
+                            missing = true;
+                        }
+                    }
+                }
+                if (missing) continue;
+                for (int k = 0; k < v.children.size(); k++) {
+                    v.addCandidate(k, new int[v.children.get(k).length]);
+                }
+                v.initialized = true;
+            } else if (!v.derivations.isEmpty() && !v.successorsAdded) {
+                //The successors of the last derivation increase the rank of one child
+                Derivation last = v.derivations.get(v.derivations.size() - 1);
+                SPPF[] c = v.children.get(last.alternative);
+                boolean missing = false;
+                for (int i = 0; i < c.length; i++) {
+                    Node n = node(c[i]);
+                    if (n.derivations.size() < last.ranks[i] + 2 && !n.exhausted) {
+                        requests.push(new Pair<>(n, last.ranks[i] + 2));
+                        missing = true;
+                    }
+                }
+                if (missing) continue;
+                for (int i = 0; i < c.length; i++) {
+                    int[] ranks = last.ranks.clone();
+                    ranks[i]++;
+                    v.addCandidate(last.alternative, ranks);
+                }
+                v.successorsAdded = true;
+            }
+
+            if (v.candidates.isEmpty()) {
+                v.exhausted = true;
+            } else {
+                v.derivations.add(v.candidates.poll());
+                v.successorsAdded = false;
+            }
+        }
+        return node(sppf).derivations.size() >= target;
+    }
+
+    /**
+     * Builds the AST of a derivation of a node
+     * @param sppf SPPF node
+     * @param r rank of the derivation
+     * @return AST
+     */
+    private AST buildAST(SPPF sppf, int r) {
+        AST res = new AST(sppf.getValue());
+        Stack<Pair<AST, Pair<SPPF, Integer>>> todo = new Stack<>();
+        todo.push(new Pair<>(res, new Pair<>(sppf, r)));
+        while (!todo.isEmpty()) {
+            AST ast = todo.peek().getLeft();
+            SPPF node = todo.peek().getRight().getLeft();
+            Derivation d = node(node).derivations.get(todo.pop().getRight().getRight());
+            SPPF[] c = node(node).children.get(d.alternative);
+            int i = 0;
+            List<Pair<AST, Pair<SPPF, Integer>>> nonterminals = new ArrayList<>();
+            for (SPPF child : node.getChildren().get(d.alternative)) {
+                AST childast = new AST(child.getValue());
+                ast.addChild(childast);
+                if (!child.getChildren().isEmpty()) {
+                    nonterminals.add(new Pair<>(childast, new Pair<>(c[i], d.ranks[i])));
+                    i++;
+                }
+            }
+            for (int k = nonterminals.size() - 1; k >= 0; k--) {
+                todo.push(nonterminals.get(k));
+            }
+        }
+        return res;
+    }
+}
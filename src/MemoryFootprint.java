@@ -0,0 +1,184 @@
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Estimated retained size in bytes of a compiled Automata, see Automata.footprint().
+ * The sizes are estimated from the object layout of a 64-bit JVM with compressed references:
+ * 12 byte object headers, 16 byte array headers, 4 byte references and objects aligned to 8 bytes.
+ * Objects which are shared between categories are only counted once, in the first category in the order of the getters.
+ */
+public class MemoryFootprint {
+
+    private final long states;
+    private final long transitions;
+    private final long coloredEdges;
+    private final long parseTreeEdges;
+    private final long colorTables;
+    private final long pruner;
+    private final long tables;
+
+    MemoryFootprint(long states, long transitions, long coloredEdges, long parseTreeEdges, long colorTables, long pruner, long tables) {
+        this.states = states;
+        this.transitions = transitions;
+        this.coloredEdges = coloredEdges;
+        this.parseTreeEdges = parseTreeEdges;
+        this.colorTables = colorTables;
+        this.pruner = pruner;
+        this.tables = tables;
+    }
+
+    /**
+     * @return States with their pairs and NonTerminals
+     */
+    public long getStates() {
+        return states;
+    }
+
+    /**
+     * @return Transitions, their Stackactions and sets of ParseTreeEdges, the transitions per State and their bitsets
+     */
+    public long getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * @return Colored Edges, their lists of sets of ParseTreeEdges, the Colored Edges per State and their bitsets
+     */
+    public long getColoredEdges() {
+        return coloredEdges;
+    }
+
+    /**
+     * @return ParseTreeEdges, including the copies of the Colored Edges
+     */
+    public long getParseTreeEdges() {
+        return parseTreeEdges;
+    }
+
+    /**
+     * @return colors and map from open to close nesting symbol
+     */
+    public long getColorTables() {
+        return colorTables;
+    }
+
+    /**
+     * @return ids and compatibility bitsets of the PrunerGenerator
+     */
+    public long getPruner() {
+        return pruner;
+    }
+
+    /**
+     * @return transition tables of Automata.recognizeLockstep and Automata.recognizeTrie, 0 until they are compiled by the first call
+     */
+    public long getTables() {
+        return tables;
+    }
+
+    /**
+     * @return total retained size
+     */
+    public long getTotal() {
+        return states + transitions + coloredEdges + parseTreeEdges + colorTables + pruner + tables;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("states=%d transitions=%d colorededges=%d parsetreeedges=%d colortables=%d pruner=%d tables=%d total=%d bytes",
+                states, transitions, coloredEdges, parseTreeEdges, colorTables, pruner, tables, getTotal());
+    }
+
+    /**
+     * Counts the objects of a category, every object is only counted once over all categories
+     */
+    static class Counter {
+
+        private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        private long bytes = 0;
+
+        /**
+         * @param o object
+         * @return if the object was not counted yet, the caller then adds its size
+         */
+        boolean visit(Object o) {
+            return o != null && seen.add(o);
+        }
+
+        void add(long size) {
+            bytes += size;
+        }
+
+        /**
+         * @return bytes counted since the last call
+         */
+        long next() {
+            long res = bytes;
+            bytes = 0;
+            return res;
+        }
+
+        void string(String s) {
+            if (visit(s)) add(object(10) + array(s.length(), 1));
+        }
+    }
+
+    /**
+     * @param fields bytes of the fields
+     * @return size of an object
+     */
+    static long object(int fields) {
+        return align(12 + fields);
+    }
+
+    /**
+     * @param length length of the array
+     * @param element bytes of an element
+     * @return size of an array
+     */
+    static long array(long length, int element) {
+        return align(16 + length * element);
+    }
+
+    /**
+     * @return size of a HashMap with its table and nodes, without keys and values
+     */
+    static long hashMap(int size) {
+        if (size == 0) return object(36);
+        long capacity = Math.max(16, Long.highestOneBit(Math.max(1, (long) (size / 0.75f))) * 2);
+        return object(36) + array(capacity, 4) + size * object(16);
+    }
+
+    /**
+     * @return size of a HashSet with its HashMap, without elements
+     */
+    static long hashSet(int size) {
+        return object(4) + hashMap(size);
+    }
+
+    /**
+     * @return size of a TreeMap with its entries, without keys and values
+     */
+    static long treeMap(int size) {
+        return object(36) + size * object(21);
+    }
+
+    /**
+     * @return size of a TreeSet with its TreeMap, without elements
+     */
+    static long treeSet(int size) {
+        return object(4) + treeMap(size);
+    }
+
+    /**
+     * @return size of an ArrayList with its array, without elements
+     */
+    static long arrayList(int size) {
+        return object(12) + array(size, 4);
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+}
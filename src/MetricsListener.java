@@ -0,0 +1,13 @@
+/**
+ * Receives the counters of every parse of an Automata, see Automata.setMetricsListener.
+ * Called on the parsing thread after the parse is done, so an implementation should be cheap, e.g. only update aggregates.
+ * Parses of multiple threads, e.g. of Automata.parseAll, call the listener concurrently.
+ */
+public interface MetricsListener {
+
+    /**
+     * Called once for every call of a parse method
+     * @param statistics counters of the parse
+     */
+    void parsed(ParseStatistics statistics);
+}
@@ -1,3 +1,5 @@
+import java.util.Objects;
+
 /**
  * Implementation of a tuple in Java
  * @param <K>
@@ -35,6 +37,11 @@ public class Pair<K, V> implements Comparable<Pair<NonTerminal, NonTerminal>>{
         );
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hash(left, right);
+    }
+
 //    @Override
 //    public int compareTo(Pair<K, V> o) {
 //        if (left.equals(o.left) && right.equals(o.right)) {
@@ -0,0 +1,92 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * Reports a trace to a ParseListener, one ParseTreeEdge at a time. Same approach as ASTBuilder,
+ * but instead of nodes only the values of the NonTerminals which are not exited yet are kept.
+ * A NonTerminal is exited when the nesting level it is part of is closed, or at the end of the trace.
+ */
+class ParseEventBuilder {
+
+    private final Map<String, String> opentoclose;
+    private final ParseListener listener;
+    private final Stack<Pair<NonTerminal, NonTerminal>> s = new Stack<>();
+    //amount of open NonTerminals when each open nesting started
+    private final Stack<Integer> sreturn = new Stack<>();
+    private String[] open = new String[16];
+    private int size = 0;
+
+    ParseEventBuilder(Map<String, String> opentoclose, ParseListener listener) {
+        this.opentoclose = opentoclose;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds the next edge of the trace
+     * @param edge next ParseTreeEdge
+     * @param position offset in the input of the symbol consumed by the edge
+     */
+    void add(ParseTreeEdge edge, int position) {
+        if (opentoclose.containsValue(edge.getC()) && !s.isEmpty() && s.peek().equals(edge.getO())) {
+            s.pop();
+            exit(sreturn.pop());
+            if (!edge.isColored()) listener.terminal(edge.getC(), position);
+            return;
+        }
+
+        enter((NonTerminal) edge.getO(), position, 1);
+        consume(edge, position);
+    }
+
+    /**
+     * Starts the NonTerminal of the next edge, which is not a return, before the edge is chosen
+     * @param o origin of the next edge
+     * @param position offset in the input of the symbol consumed by the edge
+     * @param alternatives amount of possible edges, the listener chooses one of them if there are multiple
+     * @return index of the chosen edge
+     */
+    int enter(NonTerminal o, int position, int alternatives) {
+        String value = o.toString();
+        if (size == open.length) {
+            open = Arrays.copyOf(open, size * 2);
+        }
+        open[size++] = value;
+        listener.enterNonTerminal(value, position);
+        if (alternatives == 1) {
+            return 0;
+        }
+        int choice = listener.ambiguity(value, position, alternatives);
+        if (choice < 0 || choice >= alternatives) {
+            throw new IndexOutOfBoundsException("Alternative " + choice + " of " + value + " at " + position);
+        }
+        return choice;
+    }
+
+    /**
+     * Reports the chosen edge of the NonTerminal started by enter
+     * @param edge chosen ParseTreeEdge
+     * @param position offset in the input of the symbol consumed by the edge
+     */
+    void consume(ParseTreeEdge edge, int position) {
+        if (!edge.isColored()) listener.terminal(edge.getC(), position);
+        if (opentoclose.containsKey(edge.getC())) {
+            s.push(new Pair<>((NonTerminal) edge.getO(), edge.getD()));
+            sreturn.push(size);
+        }
+    }
+
+    /**
+     * Exits all NonTerminals which are still open
+     */
+    void finish() {
+        exit(0);
+    }
+
+    private void exit(int base) {
+        while (size > base) {
+            listener.exitNonTerminal(open[--size]);
+            open[size] = null;
+        }
+    }
+}
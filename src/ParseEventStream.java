@@ -0,0 +1,207 @@
+import java.util.Arrays;
+
+/**
+ * Reports the derivation of an input to a ParseListener while it is recognized, for an automata which is not deterministic.
+ * The positions which are not reported yet are kept as a Parse Forest. Every time a closing nesting symbol is read,
+ * these positions are pruned against the input read so far, and the leading positions which are left with a single edge are reported.
+ * A nesting is only reported once its return is read, so that the alternatives of its node are known before its children are reported.
+ * At the end of the input all remaining positions are reported, and the listener chooses the alternative at every ambiguous node.
+ */
+class ParseEventStream {
+
+    //amount of positions after which they are also pruned without a closing nesting symbol
+    private static final int LIMIT = 4096;
+
+    private final PrunerGenerator pruner;
+    private final NonTerminal start;
+    private final ParseEventBuilder builder;
+    private final ParseForest forest;
+    //offset in the input of every position of the forest
+    private int[] offsets = new int[16];
+
+    //id of the last reported edge, -1 if none
+    private int last = -1;
+    //array-backed stack of the ids of the reported calls which are not closed yet
+    private int[] calls = new int[16];
+    private int depth = 0;
+    //the positions are only pruned again once the forest is larger, so that unresolved positions are not pruned at every symbol
+    private int retry = 0;
+
+    /**
+     * @param pruner PrunerGenerator of the automata
+     * @param start start NonTerminal of the automata
+     * @param builder receives the reported edges
+     */
+    ParseEventStream(PrunerGenerator pruner, NonTerminal start, ParseEventBuilder builder) {
+        this.pruner = pruner;
+        this.start = start;
+        this.builder = builder;
+        this.forest = new ParseForest(pruner, 16);
+    }
+
+    /**
+     * Adds the next position of the Parse Forest
+     * @param m bitset of the ParseTreeEdges at the position
+     * @param offset offset in the input of the symbol consumed by the edges
+     */
+    void add(long[] m, int offset) {
+        int i = forest.size();
+        forest.add(m);
+        if (i == offsets.length) {
+            offsets = Arrays.copyOf(offsets, i * 2);
+        }
+        offsets[i] = offset;
+        if (i >= retry && (pruner.isReturn(pruner.first(m)) || i + 1 >= LIMIT)) {
+            report(false);
+            retry = 2 * forest.size();
+        }
+    }
+
+    /**
+     * Reports all remaining positions, after the whole input is recognized
+     * @return false if the recognized input has no derivation, then the remaining positions are not reported
+     */
+    boolean finish() {
+        if (!report(true)) {
+            return false;
+        }
+        builder.finish();
+        return true;
+    }
+
+    /**
+     * Prunes the positions which are not reported yet and reports them from left to right, until a position has multiple possible edges.
+     * A call is only reported together with its return.
+     * @param complete if the input is recognized, so that the listener chooses at every ambiguous position and all positions are reported
+     * @return if all positions are reported
+     */
+    private boolean report(boolean complete) {
+        int n = forest.size();
+
+        //Positions of the return of every call, returns of already reported calls only keep the edges closing them
+        int[] match = new int[n];
+        int[] open = new int[16];
+        int top = 0;
+        int closed = 0;
+        for (int i = 0; i < n; i++) {
+            match[i] = -1;
+            int id = forest.next(i, 0);
+            if (pruner.isCall(id)) {
+                if (top == open.length) {
+                    open = Arrays.copyOf(open, top * 2);
+                }
+                open[top++] = i;
+            } else if (pruner.isReturn(id)) {
+                if (top > 0) {
+                    match[i] = open[--top];
+                    match[match[i]] = i;
+                } else {
+                    //A Colored Edge may close a nesting which is not opened, then no edge remains
+                    int call = closed < depth ? calls[depth - 1 - closed++] : -1;
+                    for (id = forest.next(i, 0); id >= 0; id = forest.next(i, id + 1)) {
+                        if (call < 0 || !pruner.closes(id, call)) forest.remove(i, id);
+                    }
+                }
+            }
+        }
+        pruner.prune(forest, match, complete);
+
+        int[] candidates = new int[8];
+        int i = 0;
+        for (; i < n; i++) {
+            //Edges which can follow the last reported edge
+            int count = 0;
+            for (int id = forest.next(i, 0); id >= 0; id = forest.next(i, id + 1)) {
+                boolean follows = last < 0 ? start.equals(pruner.getEdge(id).getO()) : pruner.precedes(last, id);
+                if (follows && (!pruner.isReturn(id) || pruner.closes(id, calls[depth - 1]))) {
+                    if (count == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, count * 2);
+                    }
+                    candidates[count++] = id;
+                }
+            }
+            if (complete) {
+                count = preferred(candidates, count);
+            }
+            if (count == 0) {
+                break;
+            }
+
+            int id = candidates[0];
+            if (pruner.isReturn(id)) {
+                //Calls are only reported with a single return
+                builder.add(pruner.getEdge(id), offsets[i]);
+                depth--;
+            } else if (pruner.isCall(id)) {
+                int r = match[i];
+                if (r < 0) {
+                    break;
+                }
+                //Alternatives of a call are pairs of a call and a return closing it
+                int[] pairs = new int[2 * count];
+                int alternatives = 0;
+                for (int c = 0; c < count; c++) {
+                    int[] returns = new int[8];
+                    int size = 0;
+                    for (int id2 = forest.next(r, 0); id2 >= 0; id2 = forest.next(r, id2 + 1)) {
+                        if (pruner.closes(id2, candidates[c])) {
+                            if (size == returns.length) {
+                                returns = Arrays.copyOf(returns, size * 2);
+                            }
+                            returns[size++] = id2;
+                        }
+                    }
+                    if (complete) {
+                        size = preferred(returns, size);
+                    }
+                    for (int k = 0; k < size; k++) {
+                        if (2 * alternatives == pairs.length) {
+                            pairs = Arrays.copyOf(pairs, pairs.length * 2);
+                        }
+                        pairs[2 * alternatives] = candidates[c];
+                        pairs[2 * alternatives + 1] = returns[k];
+                        alternatives++;
+                    }
+                }
+                if (alternatives == 0 || (alternatives > 1 && !complete)) break;
+                int choice = builder.enter((NonTerminal) pruner.getEdge(id).getO(), offsets[i], alternatives);
+                id = pairs[2 * choice];
+                builder.consume(pruner.getEdge(id), offsets[i]);
+                forest.retain(r, pairs[2 * choice + 1]);
+                if (depth == calls.length) {
+                    calls = Arrays.copyOf(calls, depth * 2);
+                }
+                calls[depth++] = id;
+            } else {
+                if (count > 1 && !complete) break;
+                int choice = builder.enter((NonTerminal) pruner.getEdge(id).getO(), offsets[i], count);
+                id = candidates[choice];
+                builder.consume(pruner.getEdge(id), offsets[i]);
+            }
+            last = id;
+        }
+
+        forest.removeFirst(i);
+        System.arraycopy(offsets, i, offsets, 0, n - i);
+        return i == n;
+    }
+
+    /**
+     * Removes the edges for which an edge with the same origin and a higher priority is possible (see PrunerGenerator.setPriorities)
+     * @param ids ids of the possible edges, which are kept in order
+     * @param count amount of ids
+     * @return amount of remaining ids
+     */
+    private int preferred(int[] ids, int count) {
+        int[] all = Arrays.copyOf(ids, count);
+        int res = 0;
+        for (int id : all) {
+            boolean outranked = false;
+            for (int id2 : all) {
+                outranked |= pruner.prefers(id2, id);
+            }
+            if (!outranked) ids[res++] = id;
+        }
+        return res;
+    }
+}
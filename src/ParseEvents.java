@@ -0,0 +1,118 @@
+import jdk.jfr.*;
+
+/**
+ * JDK Flight Recorder events of generating automata and parsing. The events are only recorded when they are enabled in a recording,
+ * e.g. with -XX:StartFlightRecording, and can be selected with the category "VPG Parser".
+ * The grammar id of an event is the identity hash of the start State, so all events of the automata of one Generator share the same grammar id.
+ */
+final class ParseEvents {
+
+    private ParseEvents() {
+    }
+
+    /**
+     * @return grammar id of the automata with the given start State
+     */
+    static int grammarId(State start) {
+        return System.identityHashCode(start);
+    }
+
+    @Name("vpg.Generator")
+    @Label("Generator")
+    @Description("Generation of the automata of a grammar")
+    @Category("VPG Parser")
+    static final class Generate extends Event {
+        @Label("Grammar Id")
+        int grammarId;
+        @Label("Grammar Hash")
+        @Description("Hash of the grammar text, equal across machines")
+        int grammarHash;
+        @Label("Rules")
+        int rules;
+        @Label("States")
+        int states;
+        @Label("Transitions")
+        int transitions;
+        @Label("Rounds")
+        int rounds;
+    }
+
+    @Name("vpg.GeneratorRound")
+    @Label("Generator Round")
+    @Description("Single round of the fixpoint iteration of the Generator")
+    @Category("VPG Parser")
+    static final class GenerateRound extends Event {
+        @Label("Grammar Hash")
+        int grammarHash;
+        @Label("Round")
+        int round;
+        @Label("Frontier")
+        @Description("States expanded in this round, which were derived in the previous round")
+        int frontier;
+        @Label("New States")
+        int newStates;
+        @Label("New Transitions")
+        int newTransitions;
+    }
+
+    @Name("vpg.Colorizer")
+    @Label("Colorizer")
+    @Description("Coloring of the edges of an automata")
+    @Category("VPG Parser")
+    static final class Colorize extends Event {
+        @Label("Grammar Id")
+        int grammarId;
+        @Label("Colors")
+        int colors;
+        @Label("Colored Edges")
+        int coloredEdges;
+    }
+
+    @Name("vpg.Parse")
+    @Label("Parse")
+    @Description("Call of a recognize or parse method of an Automata")
+    @Category("VPG Parser")
+    static final class Parse extends Event {
+        @Label("Grammar Id")
+        int grammarId;
+        @Label("Method")
+        String method;
+        @Label("Input Length")
+        int inputLength;
+        @Label("Accepted")
+        boolean accepted;
+        @Label("Results")
+        @Description("Amount of ASTs for methods returning a set, otherwise 1 if accepted")
+        int results;
+    }
+
+    @Name("vpg.Prune")
+    @Label("Prune")
+    @Description("Pruning of a Parse Forest")
+    @Category("VPG Parser")
+    static final class Prune extends Event {
+        @Label("Grammar Id")
+        int grammarId;
+        @Label("Input Length")
+        int inputLength;
+        @Label("Forest Edges")
+        long forestEdges;
+        @Label("Pruned Forest Edges")
+        long prunedForestEdges;
+    }
+
+    @Name("vpg.Puretrace")
+    @Label("Puretrace")
+    @Description("Extraction of the traces of a Pruned Parse Forest from one starting edge")
+    @Category("VPG Parser")
+    static final class Puretrace extends Event {
+        @Label("Grammar Id")
+        int grammarId;
+        @Label("Input Length")
+        int inputLength;
+        @Label("Traces")
+        int traces;
+        @Label("Parallel")
+        boolean parallel;
+    }
+}
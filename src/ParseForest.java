@@ -0,0 +1,162 @@
+import java.util.*;
+
+/**
+ * Parse Forest stored as one flat bitset.
+ * Every position of the Parse Forest holds the ids (see PrunerGenerator) of all ParseTreeEdges which are possible at that position,
+ * stored in a fixed amount of longs per position, so that large inputs do not need an object per position.
+ */
+public class ParseForest {
+
+    private final PrunerGenerator pruner;
+    private final int words;
+    private long[] bits;
+    private int size;
+
+    /**
+     * Create an empty Parse Forest
+     * @param pruner PrunerGenerator which assigned the ids of the ParseTreeEdges
+     * @param capacity expected amount of positions
+     */
+    public ParseForest(PrunerGenerator pruner, int capacity) {
+        this.pruner = pruner;
+        this.words = pruner.getWords();
+        this.bits = new long[Math.max(1, capacity) * words];
+        this.size = 0;
+    }
+
+    /**
+     * Appends a position to the Parse Forest
+     * @param m bitset of the ParseTreeEdges at the new position
+     */
+    public void add(long[] m) {
+        if ((size + 1) * words > bits.length) {
+            bits = Arrays.copyOf(bits, Math.max(bits.length * 2, (size + 1) * words));
+        }
+        System.arraycopy(m, 0, bits, size * words, words);
+        size++;
+    }
+
+    /**
+     * @return amount of positions in the Parse Forest
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i position in the Parse Forest
+     * @param id id of a ParseTreeEdge
+     * @return if the ParseTreeEdge is possible at position i
+     */
+    public boolean contains(int i, int id) {
+        return (bits[i * words + (id >>> 6)] & (1L << id)) != 0;
+    }
+
+    /**
+     * Iterates the ids of the ParseTreeEdges at a position: for (int id = next(i, 0); id >= 0; id = next(i, id + 1))
+     * @param i position in the Parse Forest
+     * @param from smallest id to be returned
+     * @return the smallest id >= from at position i, or -1 if none exists
+     */
+    public int next(int i, int from) {
+        int w = from >>> 6;
+        if (w >= words) return -1;
+        long word = bits[i * words + w] & (-1L << from);
+        while (true) {
+            if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == words) return -1;
+            word = bits[i * words + w];
+        }
+    }
+
+    /**
+     * @param i position in the Parse Forest
+     * @return Set of all ParseTreeEdges at position i
+     */
+    public Set<ParseTreeEdge> get(int i) {
+        Set<ParseTreeEdge> res = new HashSet<>();
+        for (int id = next(i, 0); id >= 0; id = next(i, id + 1)) {
+            res.add(pruner.getEdge(id));
+        }
+        return res;
+    }
+
+    /**
+     * @return the Parse Forest as a List of Sets of ParseTreeEdges
+     */
+    public List<Set<ParseTreeEdge>> toList() {
+        List<Set<ParseTreeEdge>> res = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            res.add(get(i));
+        }
+        return res;
+    }
+
+    /**
+     * @return total amount of ParseTreeEdges over all positions
+     */
+    public long edgeCount() {
+        long res = 0;
+        for (int i = 0; i < size * words; i++) {
+            res += Long.bitCount(bits[i]);
+        }
+        return res;
+    }
+
+    /**
+     * @return estimated retained size in bytes, including the unused capacity (see MemoryFootprint)
+     */
+    public long footprint() {
+        return MemoryFootprint.object(16) + MemoryFootprint.array(bits.length, 8);
+    }
+
+    /**
+     * @param pruner PrunerGenerator of the automata
+     * @param length length of the input
+     * @return estimated size in bytes of the Parse Forest of an input with the given length.
+     * Every pending call which is closed by a Colored Edge adds a position to the Parse Forest, which is not included.
+     */
+    public static long estimateFootprint(PrunerGenerator pruner, int length) {
+        return MemoryFootprint.object(16) + MemoryFootprint.array((long) Math.max(1, length) * pruner.getWords(), 8);
+    }
+
+    /**
+     * @return PrunerGenerator which assigned the ids of the ParseTreeEdges
+     */
+    public PrunerGenerator getPruner() {
+        return pruner;
+    }
+
+    /**
+     * Removes a ParseTreeEdge at a position
+     * @param i position in the Parse Forest
+     * @param id id of the ParseTreeEdge
+     */
+    void remove(int i, int id) {
+        bits[i * words + (id >>> 6)] &= ~(1L << id);
+    }
+
+    /**
+     * Removes all ParseTreeEdges at a position, except one
+     * @param i position in the Parse Forest
+     * @param id id of the ParseTreeEdge which is kept
+     */
+    void retain(int i, int id) {
+        Arrays.fill(bits, i * words, (i + 1) * words, 0);
+        bits[i * words + (id >>> 6)] = 1L << id;
+    }
+
+    /**
+     * Removes the first positions, the following positions move to the front
+     * @param n amount of positions to remove
+     */
+    void removeFirst(int n) {
+        System.arraycopy(bits, n * words, bits, 0, (size - n) * words);
+        size -= n;
+    }
+
+    long[] getBits() {
+        return bits;
+    }
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Receives the nodes of a derivation as events in pre-order, instead of a built AST.
+ * Every NonTerminal is reported by enterNonTerminal, followed by the events of its children and exitNonTerminal.
+ * Offsets are positions in the input. The events are reported while the input is recognized,
+ * so a prefix of the derivation may be reported before the input turns out to be rejected.
+ */
+public interface ParseListener {
+
+    /**
+     * Called when a NonTerminal node starts
+     * @param nonterminal value of the node
+     * @param offset offset of its first terminal
+     */
+    void enterNonTerminal(String nonterminal, int offset);
+
+    /**
+     * Called for every terminal, in the order of the input
+     * @param terminal value of the terminal
+     * @param offset offset of the terminal
+     */
+    void terminal(String terminal, int offset);
+
+    /**
+     * Called when all children of a NonTerminal node are reported
+     * @param nonterminal value of the node
+     */
+    void exitNonTerminal(String nonterminal);
+
+    /**
+     * Called after enterNonTerminal if the node has multiple derivations. Only the chosen derivation is reported.
+     * @param nonterminal value of the node
+     * @param offset offset of its first terminal
+     * @param alternatives amount of alternative derivations of the node
+     * @return index of the alternative to report, by default the first one
+     */
+    default int ambiguity(String nonterminal, int offset, int alternatives) {
+        return 0;
+    }
+
+    /**
+     * Called if the input is not recognized. The events reported before describe a prefix of the input which is
+     * recognized so far, of which the NonTerminals are not exited.
+     * @param offset offset of the symbol which can not be read, or the length of the input if it ends too early
+     */
+    default void rejected(int offset) {
+    }
+}
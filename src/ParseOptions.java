@@ -0,0 +1,200 @@
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Budget of a parse, see Automata.parse(String, ParseOptions). A parse which exceeds its budget throws a BudgetExceededException,
+ * so that a single ambiguous or hostile input can not exhaust the time or memory of the parsing thread.
+ * Limits which are not set are unlimited. The options can be shared by multiple parses, the timeout starts again at every call.
+ */
+public class ParseOptions {
+
+    private long maxDerivations = Long.MAX_VALUE;
+    private long maxForestEdges = Long.MAX_VALUE;
+    private Duration timeout = null;
+    private Instant deadline = null;
+    private CancellationToken token = null;
+
+    /**
+     * @param max maximum amount of derivations which are extracted from the Parse Forest
+     * @return these options
+     */
+    public ParseOptions maxDerivations(long max) {
+        if (max < 0) throw new IllegalArgumentException("Negative maximum amount of derivations");
+        maxDerivations = max;
+        return this;
+    }
+
+    /**
+     * @param max maximum amount of ParseTreeEdges in the Parse Forest before pruning. Every position holds at least one ParseTreeEdge,
+     *            so the Parse Forest is allocated for at most max + 1 positions instead of the length of the input
+     * @return these options
+     */
+    public ParseOptions maxForestEdges(long max) {
+        if (max < 0) throw new IllegalArgumentException("Negative maximum amount of forest edges");
+        maxForestEdges = max;
+        return this;
+    }
+
+    /**
+     * @param timeout maximum duration of every parse, null for no timeout
+     * @return these options
+     */
+    public ParseOptions timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * @param deadline point in time after which every parse is stopped, null for no deadline
+     * @return these options
+     */
+    public ParseOptions deadline(Instant deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    /**
+     * @param token token which stops the parses using these options when it is cancelled, null for none
+     * @return these options
+     */
+    public ParseOptions cancellation(CancellationToken token) {
+        this.token = token;
+        return this;
+    }
+
+    public long getMaxDerivations() {
+        return maxDerivations;
+    }
+
+    public long getMaxForestEdges() {
+        return maxForestEdges;
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public Instant getDeadline() {
+        return deadline;
+    }
+
+    public CancellationToken getCancellation() {
+        return token;
+    }
+
+    /**
+     * @return the remaining budget of a parse which starts now
+     */
+    Budget start() {
+        return new Budget(this);
+    }
+
+    /**
+     * Remaining budget of a single parse. The phases check it regularly: recognizing and pruning throw a BudgetExceededException,
+     * while extracting traces stops, so that the derivations found so far are returned as partial result.
+     * The extraction of traces may run in multiple threads.
+     */
+    static class Budget {
+
+        private final ParseOptions options;
+        private final boolean timed;
+        private final long end;
+        private final AtomicLong derivations = new AtomicLong();
+        private long forestEdges = 0;
+        private volatile BudgetExceededException.Reason exceeded = null;
+
+        private Budget(ParseOptions options) {
+            this.options = options;
+            long now = System.nanoTime();
+            long remaining = Long.MAX_VALUE;
+            if (options.timeout != null) {
+                remaining = saturatedNanos(options.timeout);
+            }
+            if (options.deadline != null) {
+                remaining = Math.min(remaining, saturatedNanos(Duration.between(Instant.now(), options.deadline)));
+            }
+            timed = remaining != Long.MAX_VALUE;
+            end = now + Math.max(0, remaining);
+        }
+
+        private static long saturatedNanos(Duration d) {
+            try {
+                return d.toNanos();
+            } catch (ArithmeticException e) {
+                return d.isNegative() ? 0 : Long.MAX_VALUE;
+            }
+        }
+
+        /**
+         * @throws BudgetExceededException if the parse is cancelled or past its deadline
+         */
+        void check() {
+            if (expired()) throw new BudgetExceededException(exceeded);
+        }
+
+        /**
+         * @return if the budget is exceeded, the parse is cancelled or past its deadline
+         */
+        boolean stopped() {
+            return exceeded != null || expired();
+        }
+
+        /**
+         * @return if the parse is cancelled or past its deadline
+         */
+        boolean expired() {
+            BudgetExceededException.Reason reason = exceeded;
+            if (reason == BudgetExceededException.Reason.CANCELLED || reason == BudgetExceededException.Reason.DEADLINE) {
+                return true;
+            } else if (options.token != null && options.token.isCancelled()) {
+                exceeded = BudgetExceededException.Reason.CANCELLED;
+                return true;
+            } else if (timed && System.nanoTime() - end >= 0) {
+                exceeded = BudgetExceededException.Reason.DEADLINE;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @param length length of the input
+         * @return initial capacity of the Parse Forest, which grows when needed. The Parse Forest of a parse within the budget
+         * holds at most one position per edge, so a long input does not allocate its whole Parse Forest before the edges are checked.
+         */
+        int forestCapacity(int length) {
+            return (int) Math.min(length, options.maxForestEdges + 1);
+        }
+
+        /**
+         * Counts ParseTreeEdges added to the Parse Forest
+         * @throws BudgetExceededException if the Parse Forest exceeds its maximum amount of edges
+         */
+        void forestEdges(long count) {
+            forestEdges += count;
+            if (forestEdges > options.maxForestEdges) {
+                exceeded = BudgetExceededException.Reason.FOREST_EDGES;
+                throw new BudgetExceededException(exceeded);
+            }
+        }
+
+        /**
+         * Counts an extracted derivation
+         * @return if the derivation is within the budget, otherwise the extraction stops
+         */
+        boolean derivation() {
+            if (derivations.incrementAndGet() > options.maxDerivations) {
+                exceeded = BudgetExceededException.Reason.DERIVATIONS;
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return why the budget is exceeded, null if it is not
+         */
+        BudgetExceededException.Reason getExceeded() {
+            return exceeded;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Counters of a single parse, reported to a MetricsListener (see Automata.setMetricsListener).
+ * Counters of phases which are not part of the parse stay 0, e.g. the forest edges when only recognizing.
+ * All times are in nanoseconds.
+ */
+public class ParseStatistics {
+
+    private final int inputLength;
+    private long transitions;
+    private long coloredEdges;
+    private long poppedFrames;
+    private int maxStackDepth;
+    private long forestEdges;
+    private long prunedForestEdges;
+    private long traces;
+    private long recognizeTime;
+    private long pruneTime;
+    private long extractTime;
+    private long totalTime;
+
+    ParseStatistics(int inputLength) {
+        this.inputLength = inputLength;
+    }
+
+    /**
+     * Counts a traversed transition
+     * @param colored if the transition is a Colored Edge
+     * @param depth depth of the stack after the transition
+     */
+    void transition(boolean colored, int depth) {
+        transitions++;
+        if (colored) coloredEdges++;
+        maxStackDepth = Math.max(maxStackDepth, depth);
+    }
+
+    void poppedFrame() {
+        poppedFrames++;
+    }
+
+    void recognized(long time) {
+        recognizeTime += time;
+    }
+
+    void pruned(long before, long after, long time) {
+        forestEdges += before;
+        prunedForestEdges += after;
+        pruneTime += time;
+    }
+
+    void extracted(long traces, long time) {
+        this.traces += traces;
+        extractTime += time;
+    }
+
+    void finished(long time) {
+        totalTime = time;
+    }
+
+    /**
+     * @return length of the input
+     */
+    public int getInputLength() {
+        return inputLength;
+    }
+
+    /**
+     * @return amount of traversed transitions, including Colored Edges
+     */
+    public long getTransitions() {
+        return transitions;
+    }
+
+    /**
+     * @return amount of traversed Colored Edges, which each recover pending calls
+     */
+    public long getColoredEdges() {
+        return coloredEdges;
+    }
+
+    /**
+     * @return amount of stack frames popped by color skipping
+     */
+    public long getPoppedFrames() {
+        return poppedFrames;
+    }
+
+    /**
+     * @return maximum depth of the stack
+     */
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    /**
+     * @return amount of ParseTreeEdges in the Parse Forest before pruning
+     */
+    public long getForestEdges() {
+        return forestEdges;
+    }
+
+    /**
+     * @return amount of ParseTreeEdges in the Parse Forest after pruning
+     */
+    public long getPrunedForestEdges() {
+        return prunedForestEdges;
+    }
+
+    /**
+     * @return amount of enumerated traces
+     */
+    public long getTraces() {
+        return traces;
+    }
+
+    public long getRecognizeTime() {
+        return recognizeTime;
+    }
+
+    public long getPruneTime() {
+        return pruneTime;
+    }
+
+    /**
+     * @return time of extracting the traces and building their ASTs
+     */
+    public long getExtractTime() {
+        return extractTime;
+    }
+
+    /**
+     * @return time of the whole parse
+     */
+    public long getTotalTime() {
+        return totalTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("length=%d transitions=%d colored=%d popped=%d maxdepth=%d forest=%d pruned=%d traces=%d " +
+                        "recognize=%dns prune=%dns extract=%dns total=%dns",
+                inputLength, transitions, coloredEdges, poppedFrames, maxStackDepth, forestEdges, prunedForestEdges, traces,
+                recognizeTime, pruneTime, extractTime, totalTime);
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.List;
+import java.util.Objects;
 
 /**
  * ParseTreeEdge contains information on an origin NonTerminal and a destination NonTerminal, with a symbol which is consumed in the mean time.
@@ -8,15 +9,17 @@ import java.util.List;
 public class ParseTreeEdge implements Comparable<ParseTreeEdge> {
 
     //NonTerm for normal rules, Pair of NonTerminal context and current rule when a nesting is closed
-    private Object o;
-    private String c;
-    private NonTerminal d;
+    private final Object o;
+    private final String c;
+    private final NonTerminal d;
+    private final int hash;
     private boolean isColored;
 
     public ParseTreeEdge(NonTerminal o, String c, NonTerminal d) {
         this.o = o;
         this.c = c;
         this.d = d;
+        hash = Objects.hash(o, c, d);
         isColored = false;
     }
 
@@ -24,6 +27,7 @@ public class ParseTreeEdge implements Comparable<ParseTreeEdge> {
         this.o = o;
         this.c = c;
         this.d = d;
+        hash = Objects.hash(o, c, d);
         isColored = false;
     }
 
@@ -31,6 +35,7 @@ public class ParseTreeEdge implements Comparable<ParseTreeEdge> {
         this.o = e.getO();
         this.c = e.getC();
         this.d = e.getD();
+        hash = Objects.hash(o, c, d);
         isColored = false;
     }
 
@@ -59,6 +64,21 @@ public class ParseTreeEdge implements Comparable<ParseTreeEdge> {
         return String.format("(%s %s %s)", o.toString(), c, d.toString());
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return (o instanceof ParseTreeEdge
+                && this.o.equals(((ParseTreeEdge) o).o)
+                && c.equals(((ParseTreeEdge) o).c)
+                && d.equals(((ParseTreeEdge) o).d)
+                && isColored == ((ParseTreeEdge) o).isColored
+        );
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
     @Override
     public int compareTo(ParseTreeEdge o) {
         if (this.o.equals(o.o) && this.c.equals(o.c) && this.d.equals(o.d)) {
@@ -0,0 +1,114 @@
+import java.util.*;
+
+/**
+ * Lazily enumerates all ASTs represented by an SPPF, depth-first.
+ * The current derivation is stored as the list of chosen alternatives of its NonTerminal nodes in pre-order.
+ * The next derivation is found by advancing the last choice which still has an alternative left and re-expanding the nodes after it.
+ * As every alternative in the SPPF leads to a derivation, no dead ends are explored and memory is bounded by the size of one derivation.
+ */
+public class ParseTreeIterator implements Iterator<AST> {
+
+    private final List<SPPF> nodes = new ArrayList<>();
+    private final List<Integer> choices = new ArrayList<>();
+    //Nodes still to be expanded after each chosen node
+    private final List<PersistentStack<SPPF>> pending = new ArrayList<>();
+    private boolean hasNext;
+
+    /**
+     * @param root root of the SPPF, or null if there are no derivations
+     */
+    public ParseTreeIterator(SPPF root) {
+        hasNext = root != null;
+        if (hasNext) {
+            expand(PersistentStack.<SPPF>empty().push(root));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    @Override
+    public AST next() {
+        if (!hasNext) throw new NoSuchElementException();
+        AST res = buildAST();
+        advance();
+        return res;
+    }
+
+    /**
+     * Chooses the first alternative for every node until no nodes are pending
+     * @param todo pending nodes
+     */
+    private void expand(PersistentStack<SPPF> todo) {
+        while (!todo.isEmpty()) {
+            SPPF node = todo.peek();
+            todo = todo.pop();
+            if (node.getChildren().isEmpty()) continue;
+            nodes.add(node);
+            choices.add(0);
+            pending.add(todo);
+            todo = pushAll(todo, node.getChildren().get(0));
+        }
+    }
+
+    /**
+     * Advances the last choice which has an alternative left and re-expands all nodes after it
+     */
+    private void advance() {
+        int k = nodes.size() - 1;
+        while (k >= 0 && choices.get(k) + 1 == nodes.get(k).getChildren().size()) {
+            k--;
+        }
+        if (k < 0) {
+            hasNext = false;
+            return;
+        }
+        SPPF node = nodes.get(k);
+        int choice = choices.get(k) + 1;
+        PersistentStack<SPPF> todo = pending.get(k);
+        truncate(k);
+        nodes.add(node);
+        choices.add(choice);
+        pending.add(todo);
+        expand(pushAll(todo, node.getChildren().get(choice)));
+    }
+
+    private void truncate(int k) {
+        nodes.subList(k, nodes.size()).clear();
+        choices.subList(k, choices.size()).clear();
+        pending.subList(k, pending.size()).clear();
+    }
+
+    private PersistentStack<SPPF> pushAll(PersistentStack<SPPF> todo, List<SPPF> children) {
+        for (int i = children.size() - 1; i >= 0; i--) {
+            todo = todo.push(children.get(i));
+        }
+        return todo;
+    }
+
+    /**
+     * Builds the AST of the current derivation. The chosen nodes are in pre-order, so they are matched in the same order as they are expanded.
+     * @return AST of the current derivation
+     */
+    private AST buildAST() {
+        AST res = new AST(nodes.get(0).getValue());
+        Stack<AST> todo = new Stack<>();
+        todo.push(res);
+        for (int k = 0; k < nodes.size(); k++) {
+            AST ast = todo.pop();
+            List<SPPF> children = nodes.get(k).getChildren().get(choices.get(k));
+            List<AST> nonterminals = new ArrayList<>();
+            for (SPPF child : children) {
+                AST childast = new AST(child.getValue());
+                ast.addChild(childast);
+                if (!child.getChildren().isEmpty()) nonterminals.add(childast);
+            }
+            for (int i = nonterminals.size() - 1; i >= 0; i--) {
+                todo.push(nonterminals.get(i));
+            }
+        }
+        return res;
+    }
+}
@@ -0,0 +1,88 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.*;
+
+/**
+ * Draws ASTs uniformly at random from all derivations of an SPPF.
+ * After counting the derivations of every node once, the alternatives of every node are chosen with probability
+ * proportional to their amount of derivations, so that every derivation is equally likely.
+ * Drawing an AST only visits the nodes of that AST.
+ */
+public class ParseTreeSampler {
+
+    private final SPPF root;
+    private final BigInteger count;
+    //cumulative probabilities of the alternatives of every NonTerminal node
+    private final Map<SPPF, double[]> probabilities = new HashMap<>();
+
+    /**
+     * Counts the derivations of all nodes of the SPPF
+     * @param root root of the SPPF, or null if there are no derivations
+     */
+    public ParseTreeSampler(SPPF root) {
+        this.root = root;
+        if (root == null) {
+            count = BigInteger.ZERO;
+            return;
+        }
+        Map<SPPF, BigInteger> counts = root.evaluateAll(Semiring.COUNTING, null);
+        count = counts.get(root);
+        for (SPPF node : counts.keySet()) {
+            double[] cumulative = new double[node.getChildren().size()];
+            BigInteger sum = BigInteger.ZERO;
+            for (int k = 0; k < cumulative.length; k++) {
+                BigInteger product = BigInteger.ONE;
+                for (SPPF child : node.getChildren().get(k)) {
+                    if (!child.getChildren().isEmpty()) product = product.multiply(counts.get(child));
+                }
+                sum = sum.add(product);
+                cumulative[k] = new BigDecimal(sum).divide(new BigDecimal(counts.get(node)), MathContext.DECIMAL64).doubleValue();
+            }
+            probabilities.put(node, cumulative);
+        }
+    }
+
+    /**
+     * @return amount of derivations
+     */
+    public BigInteger getCount() {
+        return count;
+    }
+
+    /**
+     * Draws an AST uniformly at random
+     * @param random source of randomness
+     * @return AST, or null if there are no derivations
+     */
+    public AST sample(Random random) {
+        if (root == null) {
+            return null;
+        }
+        AST res = new AST(root.getValue());
+        Stack<Pair<AST, SPPF>> todo = new Stack<>();
+        todo.push(new Pair<>(res, root));
+        while (!todo.isEmpty()) {
+            AST ast = todo.peek().getLeft();
+            SPPF node = todo.pop().getRight();
+            List<SPPF> children = node.getChildren().get(choose(probabilities.get(node), random.nextDouble()));
+            List<Pair<AST, SPPF>> nonterminals = new ArrayList<>();
+            for (SPPF child : children) {
+                AST childast = new AST(child.getValue());
+                ast.addChild(childast);
+                if (!child.getChildren().isEmpty()) nonterminals.add(new Pair<>(childast, child));
+            }
+            for (int i = nonterminals.size() - 1; i >= 0; i--) {
+                todo.push(nonterminals.get(i));
+            }
+        }
+        return res;
+    }
+
+    private int choose(double[] cumulative, double r) {
+        for (int k = 0; k < cumulative.length - 1; k++) {
+            if (r < cumulative[k]) return k;
+        }
+        return cumulative.length - 1;
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Immutable, structurally shared linked stack.
+ * Pushing and popping return a new stack and leave the original unchanged, so a stack can be shared by multiple branches without copying.
+ * @param <T> type of the elements
+ */
+public class PersistentStack<T> {
+
+    private static final PersistentStack<?> EMPTY = new PersistentStack<>(null, null, 0);
+
+    private final T head;
+    private final PersistentStack<T> tail;
+    private final int size;
+
+    private PersistentStack(T head, PersistentStack<T> tail, int size) {
+        this.head = head;
+        this.tail = tail;
+        this.size = size;
+    }
+
+    /**
+     * @return the empty stack
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> PersistentStack<T> empty() {
+        return (PersistentStack<T>) EMPTY;
+    }
+
+    /**
+     * @param t element to be pushed
+     * @return stack with t on top of this stack
+     */
+    public PersistentStack<T> push(T t) {
+        return new PersistentStack<>(t, this, size + 1);
+    }
+
+    /**
+     * @return stack without the top element
+     */
+    public PersistentStack<T> pop() {
+        if (isEmpty()) throw new IllegalStateException("Stack is empty");
+        return tail;
+    }
+
+    /**
+     * @return top element
+     */
+    public T peek() {
+        if (isEmpty()) throw new IllegalStateException("Stack is empty");
+        return head;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder res = new StringBuilder("[");
+        for (PersistentStack<T> s = this; !s.isEmpty(); s = s.tail) {
+            res.append(s.head);
+            if (s.size > 1) res.append(", ");
+        }
+        return res.append("]").toString();
+    }
+}
@@ -1,59 +1,437 @@
 import java.util.*;
 
+/**
+ * Precomputed compatibility engine for pruning the Parse Forest.
+ * Every distinct ParseTreeEdge of the automata receives an id, so that a set of ParseTreeEdges can be represented as a bitset (long[]).
+ * The edges are divided in three classes:
+ *      - Mpln: plain edges, consuming an internal symbol
+ *      - Mcall: call edges, consuming an opening nesting symbol
+ *      - Mret: return edges, consuming a closing nesting symbol (origin is a Pair)
+ * For every edge the set of edges which may legally precede it is stored as a bitset,
+ * so that pruning a position of the Parse Forest only consists of word-wide AND/OR operations.
+ */
 public class PrunerGenerator {
 
-    private Set<ParseTreeEdge> Mpln;
-    private Set<ParseTreeEdge> Mcall;
-    private Set<ParseTreeEdge> Mret;
-    private final Map<NonTerminal, Set<List<Token>>> rules = new HashMap<>(); //TODO
+    private final List<ParseTreeEdge> edges = new ArrayList<>();
+    private final Map<ParseTreeEdge, Integer> ids = new HashMap<>();
+    private final int words;
 
-    public PrunerGenerator() {
+    private final long[] Mpln;
+    private final long[] Mcall;
+    private final long[] Mret;
+    private final long[] nullable;
 
-        Mpln = new TreeSet<>();
-        Mcall = new TreeSet<>();
-        Mret = new TreeSet<>();
+    //pred[e2] contains all edges e which may directly precede e2
+    private final long[][] pred;
+    //opener[r] contains all call edges which are closed by the return edge r
+    private final long[][] opener;
 
-        for (NonTerminal left : rules.keySet()) {
-            for (List<Token> right : rules.get(left)) {
-                if (right.size() == 2) {
-                    Mpln.add(new ParseTreeEdge(left, right.get(0).getValue(), (NonTerminal) right.get(1)));
-                } else if (right.size() > 3) {
-                    Mcall.add(new ParseTreeEdge(left, right.get(0).getValue(), (NonTerminal) right.get(1)));
-                    Mret.add(new ParseTreeEdge(new Pair<>(left, (NonTerminal) right.get(1)), right.get(2).getValue(), (NonTerminal) right.get(3)));
+    //rivals[e] contains all edges with the same origin as e and a higher priority, null if no priorities are set
+    private long[][] rivals = null;
+
+    /**
+     * Assigns an id to all ParseTreeEdges of the automata and precomputes the compatibility bitsets.
+     * @param T Transitions
+     * @param coloredT Colored Edges
+     * @param opentoclose Map from open nesting symbol to closing nesting symbol
+     */
+    public PrunerGenerator(Set<Transition> T, Set<ColoredEdge> coloredT, Map<String, String> opentoclose) {
+        for (Transition t : T) {
+            for (ParseTreeEdge edge : t.getParseTreeEdges()) {
+                register(edge);
+            }
+        }
+        for (ColoredEdge t : coloredT) {
+            for (Set<ParseTreeEdge> s : t.getParseTreeEdgesList()) {
+                for (ParseTreeEdge edge : s) {
+                    register(edge);
                 }
             }
         }
 
+        words = Math.max(1, (edges.size() + 63) >>> 6);
+        Mpln = new long[words];
+        Mcall = new long[words];
+        Mret = new long[words];
+        nullable = new long[words];
+        for (int id = 0; id < edges.size(); id++) {
+            ParseTreeEdge edge = edges.get(id);
+            if (edge.getO() instanceof Pair) {
+                set(Mret, id);
+            } else if (opentoclose.containsKey(edge.getC())) {
+                set(Mcall, id);
+            } else {
+                set(Mpln, id);
+            }
+            if (edge.getD().nullable()) {
+                set(nullable, id);
+            }
+        }
+
+        pred = new long[edges.size()][];
+        opener = new long[edges.size()][];
+        for (int id2 = 0; id2 < edges.size(); id2++) {
+            ParseTreeEdge edge2 = edges.get(id2);
+            if (get(Mret, id2)) {
+                //A return can only follow an edge of which the destination can leave its context
+                pred[id2] = nullable.clone();
+                opener[id2] = new long[words];
+                Pair<NonTerminal, NonTerminal> pair = returnOrigin(edge2);
+                for (int id = 0; id < edges.size(); id++) {
+                    ParseTreeEdge edge = edges.get(id);
+                    if (get(Mcall, id) && pair.getLeft().equals(edge.getO()) && pair.getRight().equals(edge.getD())
+                            && edge2.getC().equals(opentoclose.get(edge.getC()))) {
+                        set(opener[id2], id);
+                    }
+                }
+            } else {
+                //Plain and call edges can only follow an edge of which the destination is their origin
+                pred[id2] = new long[words];
+                for (int id = 0; id < edges.size(); id++) {
+                    if (edges.get(id).getD().equals(edge2.getO())) {
+                        set(pred[id2], id);
+                    }
+                }
+            }
+        }
     }
 
-    public Set<ParseTreeEdge> gEps(Set<ParseTreeEdge> m) {
-        Set<ParseTreeEdge> res = new TreeSet<>();
-        for (ParseTreeEdge edge : m) {
-            res.add(edge);
+    /**
+     * Sets the priorities of the rules, which are used to disambiguate the Parse Forest after pruning (see disambiguate).
+     * A plain edge has the priority of its rule. A call edge has the highest priority of the nesting rules it can start,
+     * a return edge the priority of the nesting rule it completes.
+     * @param priorities priorities of the rules (see Generator.getPriorities), rules without a priority have priority 0. Null removes all priorities.
+     */
+    public void setPriorities(Map<NonTerminal, Map<List<Token>, Integer>> priorities) {
+        if (priorities == null || priorities.isEmpty()) {
+            rivals = null;
+            return;
+        }
+        int[] priority = new int[edges.size()];
+        for (int id = 0; id < edges.size(); id++) {
+            ParseTreeEdge edge = edges.get(id);
+            boolean ret = get(Mret, id);
+            NonTerminal o = ret ? returnOrigin(edge).getLeft() : (NonTerminal) edge.getO();
+            if (!priorities.containsKey(o)) continue;
+            for (Map.Entry<List<Token>, Integer> rule : priorities.get(o).entrySet()) {
+                List<Token> r = rule.getKey();
+                boolean matches;
+                if (ret) {
+                    matches = r.size() == 4 && r.get(0).getToken() == TokenType.NestOpen
+                            && r.get(1).equals(returnOrigin(edge).getRight())
+                            && r.get(2).equals(new Token(TokenType.NestClose, edge.getC())) && r.get(3).equals(edge.getD());
+                } else if (get(Mcall, id)) {
+                    matches = r.size() == 4 && r.get(0).equals(new Token(TokenType.NestOpen, edge.getC()))
+                            && r.get(1).equals(edge.getD());
+                } else {
+                    matches = r.size() == 2 && r.get(0).equals(new Token(TokenType.String, edge.getC())) && r.get(1).equals(edge.getD());
+                }
+                if (matches) priority[id] = Math.max(priority[id], rule.getValue());
+            }
+        }
+        rivals = new long[edges.size()][words];
+        for (int id = 0; id < edges.size(); id++) {
+            for (int id2 = 0; id2 < edges.size(); id2++) {
+                if (priority[id2] > priority[id] && edges.get(id2).getO().equals(edges.get(id).getO())) {
+                    set(rivals[id], id2);
+                }
+            }
         }
-        return res;
     }
 
-    public Set<ParseTreeEdge> g(Set<ParseTreeEdge> m1, Set<ParseTreeEdge> m2) {
-        Set<ParseTreeEdge> prunedm1 = new TreeSet<>();
-        for (ParseTreeEdge edge1 : m1) {
-            for (ParseTreeEdge edge2 : m2) {
-                if ((Mpln.contains(edge1) && Mpln.contains(edge2))
-                    || (Mpln.contains(edge1) && Mcall.contains(edge2))
-                    || (Mret.contains(edge1) && Mpln.contains(edge2))
-                    || (Mret.contains(edge1) && Mcall.contains(edge2))
-                ) {
-                    if (edge1.getD().equals(edge2.getO())) {
-                        prunedm1.add(edge1);
+    private void register(ParseTreeEdge edge) {
+        if (!ids.containsKey(edge)) {
+            ids.put(edge, edges.size());
+            edges.add(edge);
+        }
+    }
+
+    /**
+     * Prunes the Parse Forest in a single iterative pass from right to left.
+     * The last position only keeps edges of which the destination is nullable. Every other position is pruned against the already pruned following position.
+     * If a position consumes an opening nesting symbol, only calls corresponding to a return on top of the prunestack are kept, and the prunestack is popped.
+     * If a pruned position consumes a closing nesting symbol, its index is pushed on the prunestack.
+     * @param f Parse Forest, which is pruned in place
+     */
+    public void prune(ParseForest f) {
+        prune(f, null);
+    }
+
+    /**
+     * Same as prune, but checks the deadline and cancellation of a budget every 1024 positions
+     * @param f Parse Forest, which is pruned in place
+     * @param budget budget of the parse, null if unlimited
+     * @throws BudgetExceededException if the parse is cancelled or past its deadline
+     */
+    void prune(ParseForest f, ParseOptions.Budget budget) {
+        int n = f.size();
+        if (n == 0) {
+            return;
+        }
+        long[] bits = f.getBits();
+        long[] allowed = new long[words];
+        long[] openers = new long[words];
+
+        //array-backed stack of positions of already pruned nesting returns
+        int[] prunestack = new int[16];
+        int top = 0;
+
+        int offset = (n - 1) * words;
+        for (int w = 0; w < words; w++) {
+            bits[offset + w] &= nullable[w];
+        }
+        if (intersects(bits, offset, Mret)) {
+            prunestack[top++] = n - 1;
+        }
+
+        for (int i = n - 2; i >= 0; i--) {
+            if (budget != null && (i & 1023) == 0) budget.check();
+            offset = i * words;
+            int next = offset + words;
+
+            //All edges which may precede one of the edges of the already pruned following position
+            Arrays.fill(allowed, 0);
+            for (int id2 = nextSetBit(bits, next, 0); id2 >= 0; id2 = nextSetBit(bits, next, id2 + 1)) {
+                or(allowed, pred[id2]);
+            }
+
+            //Calls need to be closed by a return of the position on top of the prunestack
+            if (intersects(bits, offset, Mcall)) {
+                Arrays.fill(openers, 0);
+                if (top > 0) {
+                    int r = prunestack[--top] * words;
+                    for (int id2 = nextSetBit(bits, r, 0); id2 >= 0; id2 = nextSetBit(bits, r, id2 + 1)) {
+                        or(openers, opener[id2]);
                     }
-                } else if ((Mpln.contains(edge1) && Mret.contains(edge2))
-                        || (Mret.contains(edge1) && Mret.contains(edge2))
-                ) {
+                }
+                for (int w = 0; w < words; w++) {
+                    allowed[w] &= openers[w] | ~Mcall[w];
+                }
+            }
+
+            for (int w = 0; w < words; w++) {
+                bits[offset + w] &= allowed[w];
+            }
+            if (intersects(bits, offset, Mret)) {
+                if (top == prunestack.length) {
+                    prunestack = Arrays.copyOf(prunestack, top * 2);
+                }
+                prunestack[top++] = i;
+            }
+        }
+        if (rivals != null) {
+            disambiguate(f);
+        }
+    }
+
+    /**
+     * Prunes the positions of a Parse Forest which are not reported yet while the input is recognized (see ParseEventStream).
+     * Same as prune, but the position of the return of every call is given, so that calls of which the return is not read yet are kept.
+     * If the input may still continue, the last position keeps all its edges.
+     * @param f Parse Forest, which is pruned in place
+     * @param match position of the return of every call, -1 if its return is not in the Parse Forest
+     * @param complete if the Parse Forest ends at the end of the input
+     */
+    void prune(ParseForest f, int[] match, boolean complete) {
+        int n = f.size();
+        if (n == 0) {
+            return;
+        }
+        long[] bits = f.getBits();
+        long[] allowed = new long[words];
+        long[] openers = new long[words];
 
+        if (complete) {
+            int offset = (n - 1) * words;
+            for (int w = 0; w < words; w++) {
+                bits[offset + w] &= nullable[w];
+            }
+        }
+        for (int i = n - 2; i >= 0; i--) {
+            int offset = i * words;
+            int next = offset + words;
+
+            Arrays.fill(allowed, 0);
+            for (int id2 = nextSetBit(bits, next, 0); id2 >= 0; id2 = nextSetBit(bits, next, id2 + 1)) {
+                or(allowed, pred[id2]);
+            }
+            if (match[i] >= 0 && intersects(bits, offset, Mcall)) {
+                Arrays.fill(openers, 0);
+                int r = match[i] * words;
+                for (int id2 = nextSetBit(bits, r, 0); id2 >= 0; id2 = nextSetBit(bits, r, id2 + 1)) {
+                    or(openers, opener[id2]);
+                }
+                for (int w = 0; w < words; w++) {
+                    allowed[w] &= openers[w] | ~Mcall[w];
                 }
             }
+
+            for (int w = 0; w < words; w++) {
+                bits[offset + w] &= allowed[w];
+            }
+        }
+    }
+
+    /**
+     * Disambiguates a Pruned Parse Forest in a single pass from left to right, so that ambiguities are resolved before any trace is extracted.
+     * At every position an edge is removed if an edge with the same origin and a higher priority is possible,
+     * so that only the preferred alternatives of a NonTerminal remain. Plain and call edges of which all predecessors are removed are unreachable and removed as well.
+     * As every edge of a Pruned Parse Forest can be continued until the end, and the edge with the highest priority of every origin remains, the forest keeps a derivation.
+     * @param f Pruned Parse Forest, which is disambiguated in place
+     */
+    private void disambiguate(ParseForest f) {
+        long[] bits = f.getBits();
+        for (int i = 0; i < f.size(); i++) {
+            int offset = i * words;
+            for (int id = nextSetBit(bits, offset, 0); id >= 0; id = nextSetBit(bits, offset, id + 1)) {
+                boolean unreachable = i > 0 && !get(Mret, id) && !intersects(bits, offset - words, pred[id]);
+                if (unreachable || intersects(bits, offset, rivals[id])) {
+                    bits[offset + (id >>> 6)] &= ~(1L << id);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return if the ParseTreeEdge with id2 can directly follow the ParseTreeEdge with id
+     */
+    boolean precedes(int id, int id2) {
+        return get(pred[id2], id);
+    }
+
+    /**
+     * @return if the return edge with id ret closes the call edge with id call
+     */
+    boolean closes(int ret, int call) {
+        return get(opener[ret], call);
+    }
+
+    /**
+     * @return if the ParseTreeEdge with id2 has the same origin and a higher priority than the ParseTreeEdge with id
+     */
+    boolean prefers(int id2, int id) {
+        return rivals != null && get(rivals[id], id2);
+    }
+
+    boolean isCall(int id) {
+        return get(Mcall, id);
+    }
+
+    boolean isReturn(int id) {
+        return get(Mret, id);
+    }
+
+    /**
+     * @param m set of ParseTreeEdges
+     * @return bitset representation of m
+     */
+    public long[] toBits(Set<ParseTreeEdge> m) {
+        long[] res = new long[words];
+        for (ParseTreeEdge edge : m) {
+            Integer id = ids.get(edge);
+            if (id != null) {
+                set(res, id);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @param edge ParseTreeEdge
+     * @return id of the ParseTreeEdge, or -1 if it is not part of the automata
+     */
+    public int getId(ParseTreeEdge edge) {
+        Integer id = ids.get(edge);
+        return (id == null) ? -1 : id;
+    }
+
+    /**
+     * @param m bitset of ParseTreeEdges
+     * @return smallest id in the bitset, or -1 if it is empty
+     */
+    public int first(long[] m) {
+        return nextSetBit(m, 0, 0);
+    }
+
+    /**
+     * @return amount of distinct ParseTreeEdges
+     */
+    public int size() {
+        return edges.size();
+    }
+
+    /**
+     * @return amount of longs in every bitset
+     */
+    public int getWords() {
+        return words;
+    }
+
+    /**
+     * @param id id of a ParseTreeEdge
+     * @return ParseTreeEdge with the given id
+     */
+    public ParseTreeEdge getEdge(int id) {
+        return edges.get(id);
+    }
+
+    /**
+     * @return estimated retained size in bytes of the ids and bitsets, without the ParseTreeEdges themselves (see MemoryFootprint)
+     */
+    long footprint() {
+        //Integers below 128 are cached
+        long res = MemoryFootprint.arrayList(edges.size()) + MemoryFootprint.hashMap(ids.size())
+                + Math.max(0, ids.size() - 128) * MemoryFootprint.object(4);
+        res += 4 * MemoryFootprint.array(words, 8);
+        for (long[][] m : new long[][][] {pred, opener, rivals}) {
+            if (m == null) continue;
+            res += MemoryFootprint.array(m.length, 4);
+            for (long[] bits : m) {
+                if (bits != null) res += MemoryFootprint.array(bits.length, 8);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * @return origin of a return edge: the origin and destination of the call edge which it closes
+     */
+    //The origins of return edges are only created as Pairs of NonTerminals, so the cast is safe
+    @SuppressWarnings("unchecked")
+    private static Pair<NonTerminal, NonTerminal> returnOrigin(ParseTreeEdge edge) {
+        return (Pair<NonTerminal, NonTerminal>) edge.getO();
+    }
+
+    static void set(long[] m, int id) {
+        m[id >>> 6] |= 1L << id;
+    }
+
+    static boolean get(long[] m, int id) {
+        return (m[id >>> 6] & (1L << id)) != 0;
+    }
+
+    static void or(long[] m1, long[] m2) {
+        for (int w = 0; w < m1.length; w++) {
+            m1[w] |= m2[w];
+        }
+    }
+
+    static boolean intersects(long[] m1, int offset, long[] m2) {
+        for (int w = 0; w < m2.length; w++) {
+            if ((m1[offset + w] & m2[w]) != 0) return true;
+        }
+        return false;
+    }
+
+    private int nextSetBit(long[] m, int offset, int from) {
+        int w = from >>> 6;
+        if (w >= words) return -1;
+        long word = m[offset + w] & (-1L << from);
+        while (true) {
+            if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == words) return -1;
+            word = m[offset + w];
         }
-        return null; //TODO
     }
 
 }
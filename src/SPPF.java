@@ -1,63 +1,166 @@
 import java.util.*;
 
-public class SPPF implements Comparable<SPPF> {
+/**
+ * Shared Packed Parse Forest.
+ * Every node represents a symbol spanning positions [start, end) of the Parse Forest.
+ * A terminal node has no children. A NonTerminal node has one list of children for every alternative derivation (packed node).
+ * Nodes are shared, so that all derivations of an input are represented in polynomial space.
+ * Every alternative also stores the grammar rules it applies, so that derivations can be weighted.
+ */
+public class SPPF {
 
     private final String value;
-    private final TreeSet<List<SPPF>> children;
+    private final int start;
+    private final int end;
+    private final List<List<SPPF>> children;
+    private final List<List<Pair<NonTerminal, List<Token>>>> rules;
 
-    private final TreeMap<SPPF, SPPF> existingSPPFs;
-
-    public SPPF(String value, TreeMap<SPPF, SPPF> existingSPPFs) {
+    /**
+     * Create an SPPF node
+     * @param value symbol of the node
+     * @param start first position in the Parse Forest
+     * @param end position after the last position in the Parse Forest
+     */
+    public SPPF(String value, int start, int end) {
         this.value = value;
-        this.children = new TreeSet<>(new SPPFlistComparator());
-        this.existingSPPFs = existingSPPFs;
+        this.start = start;
+        this.end = end;
+        this.children = new ArrayList<>();
+        this.rules = new ArrayList<>();
     }
 
+    /**
+     * Adds an alternative derivation (packed node) to this node
+     * @param l children of the alternative
+     */
     public void addChildList(List<SPPF> l) {
-        for (int i = 0; i < l.size(); i++) {
-            SPPF sppf = l.get(i);
-            if (existingSPPFs.containsKey(sppf)) {
-                l.set(i, sppf);
-            } else {
-                existingSPPFs.put(sppf, sppf);
+        addChildList(l, Collections.emptyList());
+    }
+
+    /**
+     * Adds an alternative derivation (packed node) to this node
+     * @param l children of the alternative
+     * @param r rules applied by the alternative, as pairs of NonTerminal and right side
+     */
+    public void addChildList(List<SPPF> l, List<Pair<NonTerminal, List<Token>>> r) {
+        children.add(l);
+        rules.add(r);
+    }
+
+    /**
+     * Evaluates all derivations of this node in a semiring, iteratively in post-order.
+     * The value of an alternative is the product of the weights of its rules and the values of its children,
+     * the value of a node is the sum of the values of its alternatives.
+     * @param semiring semiring
+     * @param weights weights of the rules, rules without a weight have value one. Can be null.
+     * @return value of this node
+     */
+    public <T> T evaluate(Semiring<T> semiring, Map<NonTerminal, Map<List<Token>, Double>> weights) {
+        return evaluateAll(semiring, weights).get(this);
+    }
+
+    /**
+     * Same as evaluate, but returns the value of every NonTerminal node below this node
+     * @param semiring semiring
+     * @param weights weights of the rules, rules without a weight have value one. Can be null.
+     * @return Map from every NonTerminal node to its value
+     */
+    public <T> Map<SPPF, T> evaluateAll(Semiring<T> semiring, Map<NonTerminal, Map<List<Token>, Double>> weights) {
+        Map<SPPF, T> values = new HashMap<>();
+        Stack<SPPF> todo = new Stack<>();
+        todo.push(this);
+        while (!todo.isEmpty()) {
+            SPPF node = todo.peek();
+            if (values.containsKey(node)) {
+                todo.pop();
+                continue;
+            }
+            boolean ready = true;
+            for (List<SPPF> alternative : node.children) {
+                for (SPPF child : alternative) {
+                    if (!child.children.isEmpty() && !values.containsKey(child)) {
+                        todo.push(child);
+                        ready = false;
+                    }
+                }
+            }
+            if (!ready) continue;
+            todo.pop();
+
+            T value = (node.children.isEmpty()) ? semiring.one() : semiring.zero();
+            for (int k = 0; k < node.children.size(); k++) {
+                T product = semiring.one();
+                for (Pair<NonTerminal, List<Token>> rule : node.rules.get(k)) {
+                    product = semiring.times(product, weight(semiring, weights, rule.getLeft(), rule.getRight()));
+                }
+                for (SPPF child : node.children.get(k)) {
+                    if (!child.children.isEmpty()) product = semiring.times(product, values.get(child));
+                }
+                value = semiring.plus(value, product);
             }
+            values.put(node, value);
         }
-        children.add(l);
+        return values;
     }
 
+    /**
+     * @return value of applying a rule in the semiring, one if the rule has no weight
+     */
+    static <T> T weight(Semiring<T> semiring, Map<NonTerminal, Map<List<Token>, Double>> weights, NonTerminal nt, List<Token> rule) {
+        if (weights == null || !weights.containsKey(nt) || !weights.get(nt).containsKey(rule)) {
+            return semiring.one();
+        }
+        return semiring.weight(weights.get(nt).get(rule));
+    }
+
+    /**
+     * Returns all terminals in correct order. All alternatives derive the same terminals, so only the first alternative is followed.
+     * @return terminals of the node
+     */
     public String walkTerminals() {
-        if (children.isEmpty()) return value;
-        StringBuilder res = null;
-        for (List<SPPF> childlist : children) {
-            StringBuilder next = new StringBuilder();
-            if (res == null) res = next;
-            for (SPPF child : childlist) {
-                next.append(child.walkTerminals());
+        StringBuilder res = new StringBuilder();
+        Stack<SPPF> todo = new Stack<>();
+        todo.push(this);
+        while (!todo.isEmpty()) {
+            SPPF node = todo.pop();
+            if (node.children.isEmpty()) {
+                res.append(node.value);
+                continue;
+            }
+            List<SPPF> alternative = node.children.get(0);
+            for (int i = alternative.size() - 1; i >= 0; i--) {
+                todo.push(alternative.get(i));
             }
-            assert(res.toString().equals(next.toString()));
         }
         return res.toString();
     }
 
-    @Override
-    public int compareTo(SPPF o) {
-        if (!this.value.equals(o.value)) return this.value.compareTo(o.value);
-        if (children.size() != o.children.size()) return (children.size() < o.children.size()) ? -1 : 1;
-        if (children.equals(o.children)) return 0;
+    public String getValue() {
+        return value;
+    }
 
-        return -1;
+    public int getStart() {
+        return start;
     }
-}
 
-class SPPFlistComparator implements Comparator<List<SPPF>> {
+    public int getEnd() {
+        return end;
+    }
+
+    public List<List<SPPF>> getChildren() {
+        return children;
+    }
+
+    public List<List<Pair<NonTerminal, List<Token>>>> getRules() {
+        return rules;
+    }
+
+    public boolean isAmbiguous() {
+        return children.size() > 1;
+    }
 
     @Override
-    public int compare(List<SPPF> o1, List<SPPF> o2) {
-        if (o1.size() != o2.size()) return (o1.size() < o2.size()) ? -1 : 1;
-        for (int i = 0; i < o1.size(); i++) {
-            int res = o1.get(i).compareTo(o2.get(i));
-            if (res != 0) return res;
-        }
-        return 0;
+    public String toString() {
+        return String.format("%s(%d,%d)", value, start, end);
     }
 }
@@ -0,0 +1,67 @@
+import java.math.BigInteger;
+
+/**
+ * Semiring in which the derivations of an SPPF are evaluated.
+ * Alternatives of a node are combined with plus, the rules and children of an alternative are combined with times.
+ * @param <T> type of the values
+ */
+public interface Semiring<T> {
+
+    T zero();
+
+    T one();
+
+    T plus(T a, T b);
+
+    T times(T a, T b);
+
+    /**
+     * @param w weight of a rule in the grammar
+     * @return value of applying the rule
+     */
+    T weight(double w);
+
+    /**
+     * Counts the derivations. Weights are ignored.
+     */
+    Semiring<BigInteger> COUNTING = new Semiring<>() {
+        public BigInteger zero() { return BigInteger.ZERO; }
+        public BigInteger one() { return BigInteger.ONE; }
+        public BigInteger plus(BigInteger a, BigInteger b) { return a.add(b); }
+        public BigInteger times(BigInteger a, BigInteger b) { return a.multiply(b); }
+        public BigInteger weight(double w) { return BigInteger.ONE; }
+    };
+
+    /**
+     * Probability of the most probable derivation. Weights are probabilities.
+     */
+    Semiring<Double> VITERBI = new Semiring<>() {
+        public Double zero() { return 0.0; }
+        public Double one() { return 1.0; }
+        public Double plus(Double a, Double b) { return Math.max(a, b); }
+        public Double times(Double a, Double b) { return a * b; }
+        public Double weight(double w) { return w; }
+    };
+
+    /**
+     * Cost of the cheapest derivation. Weights are costs, for example negative log probabilities.
+     */
+    Semiring<Double> TROPICAL = new Semiring<>() {
+        public Double zero() { return Double.POSITIVE_INFINITY; }
+        public Double one() { return 0.0; }
+        public Double plus(Double a, Double b) { return Math.min(a, b); }
+        public Double times(Double a, Double b) { return a + b; }
+        public Double weight(double w) { return w; }
+    };
+
+    /**
+     * Total probability of all derivations. Weights are probabilities.
+     */
+    Semiring<Double> INSIDE = new Semiring<>() {
+        public Double zero() { return 0.0; }
+        public Double one() { return 1.0; }
+        public Double plus(Double a, Double b) { return a + b; }
+        public Double times(Double a, Double b) { return a * b; }
+        public Double weight(double w) { return w; }
+    };
+}
@@ -13,6 +13,9 @@ public class State implements Comparable<State>{
 
     private final TreeSet<Pair<NonTerminal, NonTerminal>> pairs;
     private boolean isFinal;
+    //Sorted pairs, so that States are compared without iterators. Reset when a pair is added.
+    //Volatile, as the States of an automata which is shared by multiple threads are compared concurrently
+    private volatile Pair<NonTerminal, NonTerminal>[] sorted = null;
 
     public State() {
         pairs = new TreeSet<>();
@@ -27,6 +30,7 @@ public class State implements Comparable<State>{
 
     public void addPair(NonTerminal left, NonTerminal right) {
         pairs.add(new Pair<>(left, right));
+        sorted = null;
     }
 
     public TreeSet<Pair<NonTerminal, NonTerminal>> getPairs() {
@@ -48,19 +52,28 @@ public class State implements Comparable<State>{
 
     @Override
     public int compareTo(State o) {
+        Pair<NonTerminal, NonTerminal>[] own = sorted();
+        Pair<NonTerminal, NonTerminal>[] other = o.sorted();
+        if (own.length != other.length) {
+            return (own.length < other.length) ? -1 : 1;
+        }
+        //Both arrays are sorted, so they are compared lexicographically
+        for (int i = 0; i < own.length; i++) {
+            int res = own[i].compareTo(other[i]);
+            if (res != 0) return res;
+        }
+        return 0;
+    }
 
-        if (pairs.equals(o.getPairs())) {
-            return 0;
-        } else if (pairs.size() != o.getPairs().size()){
-            return (pairs.size() < o.getPairs().size()) ? -1 : 1;
-        } else {
-            for (Pair<NonTerminal, NonTerminal> pair1 : pairs) {
-                for (Pair<NonTerminal, NonTerminal> pair2 : o.getPairs()) {
-                    if (!pair1.equals(pair2)) return pair1.compareTo(pair2);
-                }
-            }
-            return -1;
+    //The array only holds the pairs of the TreeSet, so the cast is safe
+    @SuppressWarnings("unchecked")
+    private Pair<NonTerminal, NonTerminal>[] sorted() {
+        Pair<NonTerminal, NonTerminal>[] res = sorted;
+        if (res == null) {
+            res = (Pair<NonTerminal, NonTerminal>[]) pairs.toArray(new Pair<?, ?>[0]);
+            sorted = res;
         }
+        return res;
     }
 
     public int comparePair(Pair<NonTerminal, NonTerminal> own, Pair<NonTerminal, NonTerminal> other) {
@@ -0,0 +1,351 @@
+import java.util.*;
+
+/**
+ * Recognizes many inputs on transition tables, see Automata.recognizeLockstep and Automata.recognizeTrie.
+ * The transitions of the automata are compiled into int arrays indexed by State and symbol, so that a step does not look up any map.
+ * In lockstep, the inputs are recognized in groups of lanes, which advance one symbol of every input per round,
+ * so that the table lookups of the lanes are independent of each other and the loop runs without a call per input.
+ * The stack of a lane holds the ids of its States and nesting symbols in reused int arrays, so that a step does not allocate objects.
+ * Over a trie, every distinct prefix of the inputs is recognized once, and the configurations are forked at the branches of the trie
+ * with a persistent stack, so that the branches share the stack of their common prefix.
+ * A step follows the same Transitions and Colored Edges in the same order as Automata.recognize, so the results are equal.
+ */
+class TableRecognizer {
+
+    //Default amount of inputs which are recognized together
+    static final int LANES = 32;
+
+    private static final int INTERNAL = 0;
+    private static final int CALL = 1;
+    private static final int RETURN = 2;
+
+    private final int start;
+    private final boolean[] accepting;
+    //If a State has regular transitions, otherwise it has no Colored Edges either (see Automata.step)
+    private final boolean[] outgoing;
+    //Symbol of every character, -1 if no transition consumes it
+    private final int[] symbolOf;
+    private final int symbols;
+    //Color of every nesting symbol
+    private final int[] colorOf;
+    private final Table plain;
+    private final Table colored;
+
+    /**
+     * Transitions of State s with symbol x are the indices from offsets[s * symbols + x] until offsets[s * symbols + x + 1]
+     */
+    private static class Table {
+        private final int[] offsets;
+        private final int[] destination;
+        private final int[] action;
+        private final int[] actionState;
+        private final int[] actionSymbol;
+        //Color of the closing symbol of a Colored Edge
+        private final int[] color;
+
+        private Table(int cells, int size) {
+            offsets = new int[cells + 1];
+            destination = new int[size];
+            action = new int[size];
+            actionState = new int[size];
+            actionSymbol = new int[size];
+            color = new int[size];
+        }
+
+        /**
+         * @return estimated retained size in bytes (see MemoryFootprint)
+         */
+        private long footprint() {
+            return MemoryFootprint.object(24) + MemoryFootprint.array(offsets.length, 4) + 5 * MemoryFootprint.array(destination.length, 4);
+        }
+    }
+
+    TableRecognizer(Map<State, Transition[]> map, Map<State, ColoredEdge[]> coloredmap, State start, Map<String, Integer> colors) {
+        //Ids of the States, Stackactions compare their States with equals
+        Map<State, Integer> states = new TreeMap<>();
+        states.put(start, 0);
+        TreeMap<Character, Integer> characters = new TreeMap<>();
+        Map<String, Integer> nestsymbols = new HashMap<>();
+        List<Transition> all = new ArrayList<>();
+        map.values().forEach(s -> all.addAll(Arrays.asList(s)));
+        coloredmap.values().forEach(s -> all.addAll(Arrays.asList(s)));
+        for (Transition t : all) {
+            states.putIfAbsent(t.getOrigin(), states.size());
+            states.putIfAbsent(t.getDestination(), states.size());
+            if (t.getStackAction().getState() != null) states.putIfAbsent(t.getStackAction().getState(), states.size());
+            if (t.getStackAction().getNestsymbol() != null) nestsymbols.putIfAbsent(t.getStackAction().getNestsymbol(), nestsymbols.size());
+            if (t.getC().length() == 1) characters.putIfAbsent(t.getC().charAt(0), characters.size());
+        }
+
+        this.start = 0;
+        accepting = new boolean[states.size()];
+        outgoing = new boolean[states.size()];
+        for (Map.Entry<State, Integer> entry : states.entrySet()) {
+            accepting[entry.getValue()] = entry.getKey().isFinal();
+            outgoing[entry.getValue()] = map.containsKey(entry.getKey());
+        }
+        symbols = characters.size();
+        symbolOf = new int[characters.isEmpty() ? 0 : characters.lastKey() + 1];
+        Arrays.fill(symbolOf, -1);
+        characters.forEach((c, x) -> symbolOf[c] = x);
+        colorOf = new int[nestsymbols.size()];
+        nestsymbols.forEach((s, id) -> colorOf[id] = colors.getOrDefault(s, -1));
+
+        plain = compile(map, states, nestsymbols, colors);
+        colored = compile(coloredmap, states, nestsymbols, colors);
+    }
+
+    /**
+     * Compiles the transitions of every State into a Table, in the order of their arrays
+     */
+    private Table compile(Map<State, ? extends Transition[]> transitions, Map<State, Integer> states,
+                          Map<String, Integer> nestsymbols, Map<String, Integer> colors) {
+        int cells = states.size() * symbols;
+        List<List<Transition>> byCell = new ArrayList<>(Collections.nCopies(cells, null));
+        int size = 0;
+        for (Map.Entry<State, ? extends Transition[]> entry : transitions.entrySet()) {
+            int s = states.get(entry.getKey());
+            for (Transition t : entry.getValue()) {
+                if (t.getC().length() != 1) continue;
+                int cell = s * symbols + symbolOf[t.getC().charAt(0)];
+                if (byCell.get(cell) == null) byCell.set(cell, new ArrayList<>());
+                byCell.get(cell).add(t);
+                size++;
+            }
+        }
+        Table res = new Table(cells, size);
+        int k = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            res.offsets[cell] = k;
+            if (byCell.get(cell) == null) continue;
+            for (Transition t : byCell.get(cell)) {
+                Stackaction sa = t.getStackAction();
+                res.destination[k] = states.get(t.getDestination());
+                res.action[k] = (sa.getTtype() == TType.CALL) ? CALL : (sa.getTtype() == TType.RETURN) ? RETURN : INTERNAL;
+                res.actionState[k] = (sa.getState() == null) ? -1 : states.get(sa.getState());
+                res.actionSymbol[k] = (sa.getNestsymbol() == null) ? -1 : nestsymbols.get(sa.getNestsymbol());
+                res.color[k] = colors.getOrDefault(t.getC(), -1);
+                k++;
+            }
+        }
+        res.offsets[cells] = k;
+        return res;
+    }
+
+    /**
+     * @return estimated retained size in bytes of the tables (see MemoryFootprint)
+     */
+    long footprint() {
+        return MemoryFootprint.object(32) + MemoryFootprint.array(accepting.length, 1) + MemoryFootprint.array(outgoing.length, 1)
+                + MemoryFootprint.array(symbolOf.length, 4) + MemoryFootprint.array(colorOf.length, 4) + plain.footprint() + colored.footprint();
+    }
+
+    /**
+     * Stack of the State and nesting symbol ids of a lane, reused for every input of the lane
+     */
+    private static class Lane {
+        private int state;
+        private int depth;
+        private int[] stackStates = new int[16];
+        private int[] stackSymbols = new int[16];
+
+        private void push(int state, int symbol) {
+            if (depth == stackStates.length) {
+                stackStates = Arrays.copyOf(stackStates, depth * 2);
+                stackSymbols = Arrays.copyOf(stackSymbols, depth * 2);
+            }
+            stackStates[depth] = state;
+            stackSymbols[depth] = symbol;
+            depth++;
+        }
+    }
+
+    /**
+     * @param inputs inputs
+     * @param lanes amount of inputs which are recognized together
+     * @return bitset in which bit i is set if input i is recognized
+     */
+    BitSet recognize(List<? extends CharSequence> inputs, int lanes) {
+        int n = inputs.size();
+        BitSet res = new BitSet(n);
+        Lane[] lane = new Lane[Math.min(lanes, n)];
+        CharSequence[] group = new CharSequence[lane.length];
+        //Lanes which are not done yet
+        int[] running = new int[lane.length];
+        for (int k = 0; k < lane.length; k++) {
+            lane[k] = new Lane();
+        }
+
+        for (int first = 0; first < n; first += lane.length) {
+            int width = Math.min(lane.length, n - first);
+            for (int k = 0; k < width; k++) {
+                group[k] = inputs.get(first + k);
+                lane[k].state = start;
+                lane[k].depth = 0;
+                running[k] = k;
+            }
+            int count = width;
+            for (int i = 0; count > 0; i++) {
+                int alive = 0;
+                for (int r = 0; r < count; r++) {
+                    int k = running[r];
+                    Lane l = lane[k];
+                    if (i == group[k].length()) {
+                        if (l.depth == 0 && accepting[l.state]) res.set(first + k);
+                        continue;
+                    }
+                    int next = step(l, group[k].charAt(i));
+                    if (next >= 0) {
+                        l.state = next;
+                        running[alive++] = k;
+                    }
+                }
+                count = alive;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Handles a single character of the input of a lane, see Automata.step
+     * @return id of the next State, or -1 if no transition is possible
+     */
+    private int step(Lane l, char c) {
+        int s = l.state;
+        if (!outgoing[s] || c >= symbolOf.length || symbolOf[c] < 0) {
+            return -1;
+        }
+        int cell = s * symbols + symbolOf[c];
+        for (int t = plain.offsets[cell]; t < plain.offsets[cell + 1]; t++) {
+            if (doStackAction(l, plain, t)) return plain.destination[t];
+        }
+        for (int t = colored.offsets[cell]; t < colored.offsets[cell + 1] && l.depth > 0; t++) {
+            while (l.depth > 0 && colorOf[l.stackSymbols[l.depth - 1]] > colored.color[t]) {
+                l.depth--;
+            }
+            if (l.depth > 0 && colorOf[l.stackSymbols[l.depth - 1]] == colored.color[t] && doStackAction(l, colored, t)) {
+                return colored.destination[t];
+            }
+        }
+        return -1;
+    }
+
+    private boolean doStackAction(Lane l, Table table, int t) {
+        switch (table.action[t]) {
+            case CALL:
+                l.push(table.actionState[t], table.actionSymbol[t]);
+                return true;
+            case RETURN:
+                if (l.depth > 0 && l.stackStates[l.depth - 1] == table.actionState[t] && l.stackSymbols[l.depth - 1] == table.actionSymbol[t]) {
+                    l.depth--;
+                    return true;
+                }
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * State and stack after a prefix of the input. A frame of the stack holds the ids of a State and a nesting symbol (see frame)
+     */
+    private static class Configuration {
+        private final int state;
+        private final PersistentStack<Long> stack;
+
+        private Configuration(int state, PersistentStack<Long> stack) {
+            this.state = state;
+            this.stack = stack;
+        }
+    }
+
+    private static long frame(int state, int symbol) {
+        return ((long) state << 32) | symbol;
+    }
+
+    private static int symbol(long frame) {
+        return (int) frame;
+    }
+
+    /**
+     * Recognizes the inputs over their trie, depth-first with an explicit stack.
+     * The subtree of a prefix which is not recognized is skipped, as none of its inputs can be recognized.
+     * @param inputs inputs
+     * @return bitset in which bit i is set if input i is recognized
+     */
+    BitSet recognizeTrie(List<? extends CharSequence> inputs) {
+        InputTrie trie = new InputTrie(inputs);
+        BitSet res = new BitSet(inputs.size());
+        //array-backed stack of the nodes which are reached, and their configurations
+        int[] nodes = new int[16];
+        Configuration[] configurations = new Configuration[16];
+        int top = 0;
+        nodes[top] = 0;
+        configurations[top++] = new Configuration(start, PersistentStack.empty());
+        while (top > 0) {
+            int node = nodes[--top];
+            Configuration configuration = configurations[top];
+            configurations[top] = null;
+            if (configuration.stack.isEmpty() && accepting[configuration.state]) {
+                for (int i = trie.firstInput(node); i >= 0; i = trie.nextInput(i)) {
+                    res.set(i);
+                }
+            }
+            for (int child = trie.firstChild(node); child >= 0; child = trie.nextSibling(child)) {
+                Configuration next = step(configuration, trie.label(child));
+                if (next == null) continue;
+                if (top == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, top * 2);
+                    configurations = Arrays.copyOf(configurations, top * 2);
+                }
+                nodes[top] = child;
+                configurations[top++] = next;
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Handles a single character after a configuration, see Automata.step
+     * @return configuration after the character, or null if no transition is possible
+     */
+    private Configuration step(Configuration from, char c) {
+        int s = from.state;
+        if (!outgoing[s] || c >= symbolOf.length || symbolOf[c] < 0) {
+            return null;
+        }
+        int cell = s * symbols + symbolOf[c];
+        for (int t = plain.offsets[cell]; t < plain.offsets[cell + 1]; t++) {
+            PersistentStack<Long> next = doStackAction(from.stack, plain, t);
+            if (next != null) return new Configuration(plain.destination[t], next);
+        }
+        PersistentStack<Long> stack = from.stack;
+        for (int t = colored.offsets[cell]; t < colored.offsets[cell + 1] && !stack.isEmpty(); t++) {
+            while (!stack.isEmpty() && colorOf[symbol(stack.peek())] > colored.color[t]) {
+                stack = stack.pop();
+            }
+            if (!stack.isEmpty() && colorOf[symbol(stack.peek())] == colored.color[t]) {
+                PersistentStack<Long> next = doStackAction(stack, colored, t);
+                if (next != null) return new Configuration(colored.destination[t], next);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return stack after the Stackaction, or null if it is not possible
+     */
+    private PersistentStack<Long> doStackAction(PersistentStack<Long> stack, Table table, int t) {
+        switch (table.action[t]) {
+            case CALL:
+                return stack.push(frame(table.actionState[t], table.actionSymbol[t]));
+            case RETURN:
+                if (!stack.isEmpty() && stack.peek() == frame(table.actionState[t], table.actionSymbol[t])) {
+                    return stack.pop();
+                }
+                return null;
+            default:
+                return stack;
+        }
+    }
+}
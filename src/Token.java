@@ -1,3 +1,5 @@
+import java.util.Objects;
+
 /**
  *  Tokens contain information on specific parts of the input grammar
  */
@@ -42,6 +44,11 @@ public class Token {
         );
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hash(token, value);
+    }
+
     @Override
     public String toString() {
         return value;
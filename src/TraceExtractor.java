@@ -0,0 +1,167 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Extracts all traces of a Pruned Parse Forest by following valid ParseTreeEdge transitions.
+ * A partial trace stores its nesting stack and its edges in persistent stacks, so that every branch continues
+ * from the shared prefix without copying or undoing changes of its siblings.
+ * Branches are explored iteratively, or in parallel as tasks of a ForkJoinPool.
+ * With a budget (see ParseOptions) the extraction stops when the budget is exceeded, and returns the traces found until then.
+ */
+class TraceExtractor {
+
+    //Below this amount of queued tasks, branches are forked so that idle workers can steal them
+    private static final int SURPLUS = 3;
+
+    private final List<Set<ParseTreeEdge>> l;
+    private final Map<String, String> opentoclose;
+    private final ParseOptions.Budget budget;
+
+    /**
+     * @param l Pruned Parse Forest
+     * @param opentoclose Map from open nesting symbol to closing nesting symbol
+     */
+    TraceExtractor(List<Set<ParseTreeEdge>> l, Map<String, String> opentoclose) {
+        this(l, opentoclose, null);
+    }
+
+    /**
+     * @param l Pruned Parse Forest
+     * @param opentoclose Map from open nesting symbol to closing nesting symbol
+     * @param budget budget of the parse, null if unlimited
+     */
+    TraceExtractor(List<Set<ParseTreeEdge>> l, Map<String, String> opentoclose, ParseOptions.Budget budget) {
+        this.l = l;
+        this.opentoclose = opentoclose;
+        this.budget = budget;
+    }
+
+    /**
+     * Partial trace: its last edge, the position of the next edge, the open nestings and all edges in reverse order
+     */
+    private static class Trace {
+        private final ParseTreeEdge edge;
+        private final int i;
+        private final PersistentStack<Pair<NonTerminal, NonTerminal>> s;
+        private final PersistentStack<ParseTreeEdge> edges;
+
+        private Trace(ParseTreeEdge edge, int i, PersistentStack<Pair<NonTerminal, NonTerminal>> s, PersistentStack<ParseTreeEdge> edges) {
+            this.edge = edge;
+            this.i = i;
+            this.s = s;
+            this.edges = edges.push(edge);
+        }
+
+        private List<ParseTreeEdge> toList() {
+            ParseTreeEdge[] res = new ParseTreeEdge[edges.size()];
+            PersistentStack<ParseTreeEdge> e = edges;
+            for (int k = res.length - 1; k >= 0; k--) {
+                res[k] = e.peek();
+                e = e.pop();
+            }
+            return new ArrayList<>(Arrays.asList(res));
+        }
+    }
+
+    /**
+     * Extracts all traces from a starting point, depth-first with an explicit stack
+     * @param start starting PTE
+     * @return all valid traces from the given starting point
+     */
+    Set<List<ParseTreeEdge>> extract(ParseTreeEdge start) {
+        Set<List<ParseTreeEdge>> res = new HashSet<>();
+        Stack<Trace> todo = new Stack<>();
+        todo.push(new Trace(start, 1, PersistentStack.empty(), PersistentStack.empty()));
+        while (!todo.isEmpty() && (budget == null || !budget.stopped())) {
+            Trace t = todo.pop();
+            if (t.i == l.size()) {
+                if (budget != null && !budget.derivation()) break;
+                res.add(t.toList());
+            } else {
+                todo.addAll(successors(t));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Same as extract, but explores ambiguous branches in parallel
+     * @param start starting PTE
+     * @param pool pool in which the branches are explored
+     * @return all valid traces from the given starting point
+     */
+    Set<List<ParseTreeEdge>> extract(ParseTreeEdge start, ForkJoinPool pool) {
+        Trace t = new Trace(start, 1, PersistentStack.empty(), PersistentStack.empty());
+        return new HashSet<>(pool.invoke(new Task(t)));
+    }
+
+    /**
+     * Explores a branch. Unambiguous parts are followed in a loop, at an ambiguity the other successors are forked
+     * while the pool has too little queued work, otherwise they are explored in this task.
+     */
+    private class Task extends RecursiveTask<List<List<ParseTreeEdge>>> {
+        private static final long serialVersionUID = 1L;
+
+        private final Trace start;
+
+        private Task(Trace start) {
+            this.start = start;
+        }
+
+        @Override
+        protected List<List<ParseTreeEdge>> compute() {
+            List<List<ParseTreeEdge>> res = new ArrayList<>();
+            List<Task> forked = new ArrayList<>();
+            Stack<Trace> todo = new Stack<>();
+            todo.push(start);
+            while (!todo.isEmpty() && (budget == null || !budget.stopped())) {
+                Trace t = todo.pop();
+                if (t.i == l.size()) {
+                    if (budget != null && !budget.derivation()) break;
+                    res.add(t.toList());
+                    continue;
+                }
+                List<Trace> next = successors(t);
+                for (int k = 1; k < next.size(); k++) {
+                    if (getSurplusQueuedTaskCount() < SURPLUS) {
+                        Task task = new Task(next.get(k));
+                        task.fork();
+                        forked.add(task);
+                    } else {
+                        todo.push(next.get(k));
+                    }
+                }
+                if (!next.isEmpty()) todo.push(next.get(0));
+            }
+            for (Task task : forked) {
+                res.addAll(task.join());
+            }
+            return res;
+        }
+    }
+
+    /**
+     * Follows all valid transitions from the last edge of a partial trace to the next position.
+     * A call pushes its nesting, a return is only valid if it closes the nesting on top of the stack.
+     * @param t partial trace
+     * @return all partial traces one position longer
+     */
+    private List<Trace> successors(Trace t) {
+        List<Trace> res = new ArrayList<>();
+        ParseTreeEdge start = t.edge;
+        PersistentStack<Pair<NonTerminal, NonTerminal>> s = t.s;
+        if (opentoclose.containsKey(start.getC())) {
+            s = s.push(new Pair<>((NonTerminal) start.getO(), start.getD()));
+        }
+        for (ParseTreeEdge edge : l.get(t.i)) {
+            if (start.getD().equals(edge.getO())) {
+                res.add(new Trace(edge, t.i + 1, s, t.edges));
+            } else if (start.getD().nullable() && edge.getO() instanceof Pair
+                    && !s.isEmpty() && s.peek().equals(edge.getO())) {
+                res.add(new Trace(edge, t.i + 1, s.pop(), t.edges));
+            }
+        }
+        return res;
+    }
+}
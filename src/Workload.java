@@ -0,0 +1,80 @@
+import java.util.Random;
+
+/**
+ * Grammar and input of a benchmark workload, ported from JUnitPerformanceTest.
+ * A workload is written as its name and size, e.g. "longInput-1600":
+ *      - longInput-n: "S : "a" S | e" with n a's
+ *      - deepGrammar-n: a chain of n rules with n a's
+ *      - deepNesting-n: 26 nesting rules with n times 26 levels of nesting
+ *      - combined-n: random regular and nesting rules with n to n + 99 rules, generated with a fixed seed
+ *      - generated-n: input of length n of a grammar of WorkloadGenerator with 10 rules, 4 terminals and nesting depth 32
+ *      - longAmbiguity-n: 2^n derivations of n a's
+ *      - broadAmbiguity-n: 10^n derivations of 2n a's
+ */
+public class Workload {
+
+    private final String grammar;
+    private final String input;
+
+    private Workload(String grammar, String input) {
+        this.grammar = grammar;
+        this.input = input;
+    }
+
+    /**
+     * @param workload name and size of the workload
+     * @return grammar and input of the workload
+     */
+    public static Workload of(String workload) {
+        String name = workload.substring(0, workload.lastIndexOf('-'));
+        int n = Integer.parseInt(workload.substring(workload.lastIndexOf('-') + 1));
+        switch (name) {
+            case "longInput":
+                return new Workload("S : \"a\" S\n  | e;", "a".repeat(n));
+            case "deepGrammar":
+                StringBuilder grammar = new StringBuilder();
+                for (int i = 0; i < n; i++) {
+                    grammar.append("S").append(i).append(" : \"a\" S").append(i + 1).append(";\n");
+                }
+                grammar.append("S").append(n).append(" : e;");
+                return new Workload(grammar.toString(), "a".repeat(n));
+            case "deepNesting":
+                StringBuilder nesting = new StringBuilder("RULE : e\n");
+                StringBuilder left = new StringBuilder();
+                StringBuilder right = new StringBuilder();
+                for (int i = 97; i <= 122; i++) {
+                    nesting.append("  | [ \"").append((char) i).append("\" RULE \"").append((char) (i - 32)).append("\" ] RULE\n");
+                    left.insert(0, (char) i);
+                    right.append((char) (i - 32));
+                }
+                nesting.append(";");
+                return new Workload(nesting.toString(), left.toString().repeat(n) + right.toString().repeat(n));
+            case "combined":
+                Pair<String, String> combined = WorkloadGenerator.combined(new Random(n), n, n + 99);
+                return new Workload(combined.getLeft(), combined.getRight());
+            case "generated":
+                WorkloadGenerator generator = new WorkloadGenerator(n, 10, 4, 1, 32, 1);
+                return new Workload(generator.grammar(), generator.input(n));
+            case "longAmbiguity":
+                return new Workload("S : \"a\" S\n  | \"a\" A\n  | e;\nA : \"a\" S\n  | \"a\" A\n  | e;\n", "a".repeat(n));
+            case "broadAmbiguity":
+                StringBuilder broad = new StringBuilder(";\n");
+                for (int i = 0; i < 10; i++) {
+                    broad.insert(0, "| \"a\" S" + i + "\n");
+                    broad.append("S").append(i).append(" : \"a\" S;\n");
+                }
+                broad.insert(0, "S : e\n");
+                return new Workload(broad.toString(), "aa".repeat(n));
+            default:
+                throw new IllegalArgumentException("Unknown workload " + workload);
+        }
+    }
+
+    public String getGrammar() {
+        return grammar;
+    }
+
+    public String getInput() {
+        return input;
+    }
+}
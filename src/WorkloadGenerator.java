@@ -0,0 +1,235 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Seeded generator of grammars and inputs for benchmarks and capacity tests. The same seed and parameters always generate the same workload.
+ * A generated grammar consists of the rules RULE0 to RULE(rules - 1), where RULE0 is the start symbol. Every rule has the alternatives:
+ *      - "x" RULEj for every terminal x of the alphabet, ambiguity times with distinct random successors RULEj
+ *      - [ "(" RULEj ")" ] RULEk with a random nesting pair and random RULEj and RULEk, if the nesting depth is positive
+ *      - e
+ * The inputs are random walks through the grammar, so they are always accepted. Their nesting never exceeds the nesting depth,
+ * and every symbol of an input has ambiguity possible derivations.
+ */
+public class WorkloadGenerator {
+
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789";
+    private static final String[] PAIRS = {"[]", "()", "<>", "{}"};
+
+    private final long seed;
+    private final int depth;
+    private final String alphabet;
+    //successors[i][x] contains the successors of terminal x in RULEi
+    private final int[][][] successors;
+    //nesting[i] contains the nesting pair, inner rule and following rule of the nesting alternative of RULEi
+    private final int[][] nesting;
+
+    /**
+     * Generates the structure of a grammar
+     * @param seed seed of the grammar and its inputs
+     * @param rules amount of rules
+     * @param alphabet amount of terminals, at most 36
+     * @param pairs amount of distinct nesting pairs, at most 4
+     * @param depth maximum nesting depth of the inputs, 0 for a grammar without nesting rules
+     * @param ambiguity amount of alternatives for every terminal of a rule, at most the amount of rules
+     */
+    public WorkloadGenerator(long seed, int rules, int alphabet, int pairs, int depth, int ambiguity) {
+        if (rules < 1 || alphabet < 1 || alphabet > ALPHABET.length() || depth < 0 || ambiguity < 1 || ambiguity > rules
+                || (depth > 0 && (pairs < 1 || pairs > PAIRS.length))) {
+            throw new IllegalArgumentException("Invalid workload parameters");
+        }
+        this.seed = seed;
+        this.depth = depth;
+        this.alphabet = ALPHABET.substring(0, alphabet);
+        Random random = new Random(seed);
+        successors = new int[rules][alphabet][];
+        nesting = new int[rules][];
+        for (int i = 0; i < rules; i++) {
+            for (int x = 0; x < alphabet; x++) {
+                successors[i][x] = distinct(random, rules, ambiguity);
+            }
+            if (depth > 0) {
+                nesting[i] = new int[]{random.nextInt(pairs), random.nextInt(rules), random.nextInt(rules)};
+            }
+        }
+    }
+
+    /**
+     * @return k distinct random integers in [0, n), using a partial Fisher-Yates shuffle
+     */
+    private static int[] distinct(Random random, int n, int k) {
+        if (k == 1) {
+            return new int[]{random.nextInt(n)};
+        }
+        int[] all = new int[n];
+        for (int i = 0; i < n; i++) {
+            all[i] = i;
+        }
+        for (int i = 0; i < k; i++) {
+            int j = i + random.nextInt(n - i);
+            int t = all[i];
+            all[i] = all[j];
+            all[j] = t;
+        }
+        return Arrays.copyOf(all, k);
+    }
+
+    /**
+     * @return grammar in the form accepted by Generator
+     */
+    public String grammar() {
+        StringBuilder res = new StringBuilder();
+        for (int i = 0; i < successors.length; i++) {
+            res.append("RULE").append(i).append(" : ");
+            for (int x = 0; x < successors[i].length; x++) {
+                for (int j : successors[i][x]) {
+                    res.append('"').append(alphabet.charAt(x)).append("\" RULE").append(j).append("\n  | ");
+                }
+            }
+            if (nesting[i] != null) {
+                String pair = PAIRS[nesting[i][0]];
+                res.append("[ \"").append(pair.charAt(0)).append("\" RULE").append(nesting[i][1]).append(" \"")
+                        .append(pair.charAt(1)).append("\" ] RULE").append(nesting[i][2]).append("\n  | ");
+            }
+            res.append("e;\n");
+        }
+        return res.toString();
+    }
+
+    /**
+     * @param length length of the input
+     * @return input of the given length, which only depends on the seed, the grammar and the length
+     */
+    public String input(int length) {
+        StringBuilder res = new StringBuilder(length);
+        try {
+            input(length, res);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return res.toString();
+    }
+
+    /**
+     * Writes an input of the given length, without building the whole String
+     * @param length length of the input
+     * @param out destination of the input
+     * @throws IOException if writing to out fails
+     */
+    public void input(int length, Appendable out) throws IOException {
+        Random random = new Random(seed * 31 + length);
+        //array-backed stack of the closing symbols and following rules of the open nesting rules
+        char[] closing = new char[Math.min(depth, 16) + 1];
+        int[] following = new int[closing.length];
+        int top = 0;
+        int rule = 0;
+        for (int i = 0; i < length; i++) {
+            int remaining = length - i;
+            if (top > 0 && (remaining == top || random.nextInt(4) == 0)) {
+                out.append(closing[--top]);
+                rule = following[top];
+            } else if (nesting[rule] != null && top < depth && remaining >= top + 2 && random.nextInt(4) == 0) {
+                if (top == closing.length) {
+                    closing = Arrays.copyOf(closing, top * 2);
+                    following = Arrays.copyOf(following, top * 2);
+                }
+                String pair = PAIRS[nesting[rule][0]];
+                out.append(pair.charAt(0));
+                closing[top] = pair.charAt(1);
+                following[top++] = nesting[rule][2];
+                rule = nesting[rule][1];
+            } else {
+                int x = random.nextInt(alphabet.length());
+                int[] s = successors[rule][x];
+                out.append(alphabet.charAt(x));
+                rule = s[random.nextInt(s.length)];
+            }
+        }
+    }
+
+    /**
+     * Seeded and iterative version of the combined grammars of JUnitPerformanceTest: a chain of regular and nesting rules,
+     * of which the input follows the chain. Grammars are generated until one has between minimum and maximum rules.
+     * @param random source of randomness
+     * @param minimum minimum amount of rules
+     * @param maximum maximum amount of rules
+     * @return pair of grammar and input
+     */
+    public static Pair<String, String> combined(Random random, int minimum, int maximum) {
+        int length = minimum / 10;
+        while (true) {
+            StringBuilder grammar = new StringBuilder();
+            StringBuilder input = new StringBuilder();
+            Stack<Integer> nestinglocation = new Stack<>();
+            int i;
+            for (i = 0; (i < length || !nestinglocation.isEmpty()) && i <= maximum; i++) {
+                int r = (nestinglocation.isEmpty()) ? random.nextInt(3) : random.nextInt(4);
+                if (r == 2) {
+                    //Opening rule, completed when the nesting is closed
+                    grammar.append("RULE").append(i).append(" : [ \"[\" RULE").append(i + 1).append(" \"]\" ] RULE");
+                    nestinglocation.push(grammar.length());
+                    input.append("[");
+                    continue;
+                } else if (r == 3) {
+                    grammar.append("RULE").append(i).append(" : e;\n");
+                    grammar.insert(nestinglocation.pop(), i + 1 + " ;\n");
+                    input.append("]");
+                } else {
+                    grammar.append("RULE").append(i).append(" : \"a\" RULE").append(i + 1).append(";\n");
+                    input.append("a");
+                }
+                if (i >= length - 1 && nestinglocation.isEmpty()) {
+                    grammar.append("RULE").append(i + 1).append(" : e;\n");
+                }
+            }
+            int grammarsize = grammar.toString().split("\n").length;
+            if (nestinglocation.isEmpty() && grammarsize >= minimum && grammarsize <= maximum) {
+                return new Pair<>(grammar.toString(), input.toString());
+            }
+        }
+    }
+
+    /**
+     * Writes a corpus to a directory: grammar.txt, and input-n.txt for every length n.
+     * Usage: java WorkloadGenerator directory [-seed s] [-rules r] [-alphabet a] [-pairs p] [-depth d] [-ambiguity k] [-length n,...]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java WorkloadGenerator directory [-seed s] [-rules r] [-alphabet a] [-pairs p] [-depth d] [-ambiguity k] [-length n,...]");
+            System.exit(1);
+        }
+        File directory = new File(args[0]);
+        long seed = 0;
+        int rules = 10;
+        int alphabet = 4;
+        int pairs = 1;
+        int depth = 32;
+        int ambiguity = 1;
+        String[] lengths = {"1000000"};
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "-seed": seed = Long.parseLong(args[i + 1]); break;
+                case "-rules": rules = Integer.parseInt(args[i + 1]); break;
+                case "-alphabet": alphabet = Integer.parseInt(args[i + 1]); break;
+                case "-pairs": pairs = Integer.parseInt(args[i + 1]); break;
+                case "-depth": depth = Integer.parseInt(args[i + 1]); break;
+                case "-ambiguity": ambiguity = Integer.parseInt(args[i + 1]); break;
+                case "-length": lengths = args[i + 1].split(","); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        WorkloadGenerator generator = new WorkloadGenerator(seed, rules, alphabet, pairs, depth, ambiguity);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can not create " + directory);
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(directory, "grammar.txt")), StandardCharsets.UTF_8)) {
+            out.write(generator.grammar());
+        }
+        for (String length : lengths) {
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(new File(directory, "input-" + length + ".txt")), StandardCharsets.UTF_8))) {
+                generator.input(Integer.parseInt(length), out);
+            }
+        }
+    }
+}